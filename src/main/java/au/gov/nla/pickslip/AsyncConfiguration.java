@@ -4,6 +4,7 @@ import java.util.concurrent.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -18,14 +19,22 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
   private Logger log = LoggerFactory.getLogger(this.getClass());
 
-  @Override
-  public Executor getAsyncExecutor() {
+  // shared with services that fan out FOLIO calls directly - the pool size bounds the number of
+  // concurrent FOLIO calls across the app.
+  @Bean
+  public ThreadPoolTaskExecutor folioAsyncExecutor() {
 
     ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
     executor.setCorePoolSize(this.concurrency);
     executor.setMaxPoolSize(this.concurrency);
+    executor.setThreadNamePrefix("folio-async-");
 
     executor.initialize();
     return executor;
   }
+
+  @Override
+  public Executor getAsyncExecutor() {
+    return folioAsyncExecutor();
+  }
 }
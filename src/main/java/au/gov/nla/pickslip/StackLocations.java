@@ -1,8 +1,10 @@
 package au.gov.nla.pickslip;
 
+import java.time.Duration;
 import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
@@ -12,7 +14,21 @@ public class StackLocations {
 
   private List<Location> stacks;
 
-  public record Location(String code, String label) {}
+  // refreshSeconds (optional): how often this stack's pickslips are retrieved.  Stacks without
+  // one are retrieved on every (adaptively scheduled) main run.
+  public record Location(String code, String label, Integer refreshSeconds) {
+
+    @ConstructorBinding
+    public Location {}
+
+    public Location(String code, String label) {
+      this(code, label, null);
+    }
+
+    public Duration refreshInterval() {
+      return refreshSeconds == null ? null : Duration.ofSeconds(refreshSeconds);
+    }
+  }
   ;
 
   public void setStacks(List<Location> stacks) {
@@ -19,7 +19,9 @@ import org.springframework.security.web.SecurityFilterChain;
 @RequiredArgsConstructor
 public class SecurityConfiguration {
   static String[] ANONYMOUS_PATHS = {"/export/**", "/bulkprint/**", "/location/**", "/", "/home",
-      "/user/**", "/webjars/**", "/css/**"};
+      "/user/**", "/webjars/**", "/css/**", "/js/**", "/search", "/scan", "/status",
+      "/api/summary", "/api/search", "/api/scan", "/api/status", "/api/events",
+      "/api/queues/**", "/api/requests/**"};
 
   private final KeycloakLogoutHandler keycloakLogoutHandler;
 
@@ -6,19 +6,28 @@ import au.gov.nla.pickslip.domain.PickslipQueues;
 import au.gov.nla.pickslip.dto.RequestNoteDto;
 import au.gov.nla.pickslip.service.FolioService;
 import au.gov.nla.pickslip.service.PdfResponderService;
+import au.gov.nla.pickslip.service.QueueMetricsService;
 import au.gov.nla.pickslip.service.RequestEditService;
 import au.gov.nla.pickslip.service.ScheduledRequestRetrieverService;
+import au.gov.nla.pickslip.service.ScheduledRequestRetrieverService.StackFreshness;
+import au.gov.nla.pickslip.service.StackFragmentCache;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -27,10 +36,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @Controller
 @Slf4j
@@ -54,12 +66,20 @@ public class HomeController {
   @Autowired
   RequestEditService requestEditService;
 
+  @Autowired
+  QueueMetricsService queueMetricsService;
+
+  @Autowired
+  StackFragmentCache stackFragmentCache;
+
   @Value("${folio.request-view-prefix}")
   String requestViewPrefix;
 
   @Value("${folio.request-view-postfix}")
   String requestViewPostfix;
 
+  static final int SEARCH_LIMIT = 200;
+
   private static final DateTimeFormatter CS_DOWNLOAD_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
   @GetMapping("/export/{id}")
@@ -122,11 +142,13 @@ public class HomeController {
     ServletOutputStream sos = response.getOutputStream();
     response.addHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
 
-    var uptoPickslip = this.pickslipQueues.getPickslipByRequestId(upToId);
+    // one version of the model throughout
+    var queues = this.pickslipQueues.snapshot();
+    var uptoPickslip = queues.getPickslipByRequestId(upToId);
     var stackPickslips =
         visitors
-            ? this.pickslipQueues.getVisitorsForStack(stack)
-            : this.pickslipQueues.getPickslipsForStack(stack);
+            ? queues.getVisitorsForStack(stack)
+            : queues.getPickslipsForStack(stack);
     if (uptoPickslip == null || stackPickslips == null) {
       return;
     }
@@ -170,16 +192,33 @@ public class HomeController {
   public String stack(
       @PathVariable(value = "stack") String stackCode,
       @RequestParam(required = false) String[] showOnly,
+      @RequestParam(defaultValue = "1") int page,
       Model model,
-      final Principal principal) {
+      final Principal principal,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+
+    var stack = stackLocations.getStackForCode(stackCode);
+    var stacks = filterStackLocations(showOnly);
+    var freshness = scheduledRequestRetrieverService.getStackFreshness();
+    var queues = pickslipQueues.snapshot();
+
+    if (notModified(request, response,
+        pageETag("location/" + stackCode + "/" + page, queues, showOnly, stacks, freshness,
+            principal))) {
+      return null;
+    }
 
-    addRequestViewAttributes(model);
-    model.addAttribute("lastSuccess", scheduledRequestRetrieverService.getLastCompleted());
+    model.addAttribute("freshness", freshness);
+    model.addAttribute("lastSuccess", stack == null
+        ? scheduledRequestRetrieverService.getLastCompleted()
+        : oldestUpdate(freshness, List.of(stack)));
     model.addAttribute("showOnly", showOnly);
-    model.addAttribute("stacks", filterStackLocations(showOnly));
-    model.addAttribute("stack", stackLocations.getStackForCode(stackCode));
-    model.addAttribute("queue", pickslipQueues.getPickslipsForStack(stackCode));
-    model.addAttribute("visitors", pickslipQueues.getVisitorsForStack(stackCode));
+    model.addAttribute("stacks", stacks);
+    model.addAttribute("stack", stack);
+    model.addAttribute("version", queues.getVersion());
+    model.addAttribute("fragment", stackFragmentCache.get(
+        StackFragmentCache.STACK_QUEUES, stack, showOnly, page, queues, request, response));
 
     if (principal != null) {
       model.addAttribute("loggedInUser", ((OAuth2AuthenticationToken) principal).getPrincipal()
@@ -189,15 +228,55 @@ public class HomeController {
     return "stack";
   }
 
+  // just the queues of a stack page - for replacing them in place when they change (see
+  // QueueEventService).
+  @GetMapping(value = "/location/{stack}", params = "fragment", produces = MediaType.TEXT_HTML_VALUE)
+  @ResponseBody
+  public String stackFragment(
+      @PathVariable(value = "stack") String stackCode,
+      @RequestParam(required = false) String[] showOnly,
+      @RequestParam(defaultValue = "1") int page,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+
+    var queues = pickslipQueues.snapshot();
+    if (notModified(request, response,
+        pageETag("location/" + stackCode + "/" + page + "/fragment", queues, showOnly, List.of(),
+            Map.of(), null))) {
+      return null;
+    }
+
+    return stackFragmentCache.get(StackFragmentCache.STACK_QUEUES,
+        stackLocations.getStackForCode(stackCode), showOnly, page, queues, request, response);
+  }
+
   @GetMapping({"", "/", "/home"})
   public String index(@RequestParam(required = false) String[] showOnly, Model model,
-                      final Principal principal) {
+                      final Principal principal, HttpServletRequest request,
+                      HttpServletResponse response) {
 
-    addRequestViewAttributes(model);
-    model.addAttribute("lastSuccess", scheduledRequestRetrieverService.getLastCompleted());
+    var stacks = filterStackLocations(showOnly);
+    var freshness = scheduledRequestRetrieverService.getStackFreshness();
+    var queues = pickslipQueues.snapshot();
+
+    if (notModified(request, response,
+        pageETag("home", queues, showOnly, stacks, freshness, principal))) {
+      return null;
+    }
+
+    // each stack's rows are rendered once per snapshot (and showOnly), shared by every viewer.
+    Map<String, String> fragments = new HashMap<>();
+    for (var stack : stacks) {
+      fragments.put(stack.code(), stackFragmentCache.get(
+          StackFragmentCache.INDEX_ROWS, stack, showOnly, queues, request, response));
+    }
+
+    model.addAttribute("freshness", freshness);
+    model.addAttribute("lastSuccess", oldestUpdate(freshness, stacks));
     model.addAttribute("showOnly", showOnly);
-    model.addAttribute("stacks", filterStackLocations(showOnly));
-    model.addAttribute("queues", pickslipQueues);
+    model.addAttribute("stacks", stacks);
+    model.addAttribute("version", queues.getVersion());
+    model.addAttribute("fragments", fragments);
 
     if (principal != null) {
       model.addAttribute("loggedInUser", ((OAuth2AuthenticationToken) principal).getPrincipal()
@@ -207,6 +286,197 @@ public class HomeController {
     return "index";
   }
 
+  // one stack's rows of the index page - for replacing them in place when they change (see
+  // QueueEventService).
+  @GetMapping(value = {"", "/", "/home"}, params = "fragment", produces = MediaType.TEXT_HTML_VALUE)
+  @ResponseBody
+  public String indexFragment(@RequestParam String fragment,
+                              @RequestParam(required = false) String[] showOnly,
+                              HttpServletRequest request, HttpServletResponse response) {
+
+    var queues = pickslipQueues.snapshot();
+    if (notModified(request, response,
+        pageETag("home/fragment/" + fragment, queues, showOnly, List.of(), Map.of(), null))) {
+      return null;
+    }
+
+    return stackFragmentCache.get(StackFragmentCache.INDEX_ROWS,
+        stackLocations.getStackForCode(fragment), showOnly, queues, request, response);
+  }
+
+  // find requests across all stacks by partial title, contributor, call number, patron name or
+  // barcode.
+  @GetMapping("/search")
+  public String search(@RequestParam(required = false) String q,
+                       @RequestParam(required = false) String[] showOnly, Model model,
+                       final Principal principal) {
+
+    var stacks = filterStackLocations(showOnly);
+    var freshness = scheduledRequestRetrieverService.getStackFreshness();
+
+    addRequestViewAttributes(model);
+    model.addAttribute("freshness", freshness);
+    model.addAttribute("lastSuccess", oldestUpdate(freshness, stackLocations.getStacks()));
+    model.addAttribute("showOnly", showOnly);
+    model.addAttribute("stacks", stacks);
+    model.addAttribute("q", q);
+    model.addAttribute("results",
+        q == null ? List.of() : pickslipQueues.snapshot().search(q, SEARCH_LIMIT));
+    model.addAttribute("searchLimit", SEARCH_LIMIT);
+
+    if (principal != null) {
+      model.addAttribute("loggedInUser", ((OAuth2AuthenticationToken) principal).getPrincipal()
+          .getAttribute("preferred_username"));
+    }
+
+    return "search";
+  }
+
+  // barcode scanner (keyboard wedge) lookup at a retrieval desk: the requests for a scanned item
+  // barcode (or patron barcode, once signed in), with the scan box refocused ready for the next
+  // scan.
+  @GetMapping("/scan")
+  public String scan(@RequestParam(required = false) String barcode,
+                     @RequestParam(required = false) String[] showOnly, Model model,
+                     final Principal principal) {
+
+    var stacks = filterStackLocations(showOnly);
+    var freshness = scheduledRequestRetrieverService.getStackFreshness();
+
+    addRequestViewAttributes(model);
+    model.addAttribute("freshness", freshness);
+    model.addAttribute("lastSuccess", oldestUpdate(freshness, stackLocations.getStacks()));
+    model.addAttribute("showOnly", showOnly);
+    model.addAttribute("stacks", stacks);
+    model.addAttribute("scan", true);
+    model.addAttribute("q", barcode);
+    if (barcode == null) {
+      model.addAttribute("results", List.of());
+    } else {
+      var result = pickslipQueues.snapshot().scan(barcode, principal != null);
+      model.addAttribute("results", result.items().isEmpty() ? result.patron() : result.items());
+      model.addAttribute("single", result.single());
+    }
+    model.addAttribute("searchLimit", Integer.MAX_VALUE);
+
+    if (principal != null) {
+      model.addAttribute("loggedInUser", ((OAuth2AuthenticationToken) principal).getPrincipal()
+          .getAttribute("preferred_username"));
+    }
+
+    return "search";
+  }
+
+  // retriever state, recent queue depth of each stack and how long requests are waiting for
+  // retrieval.
+  @GetMapping("/status")
+  public String status(@RequestParam(required = false) String[] showOnly, Model model,
+                       final Principal principal) {
+
+    var stacks = filterStackLocations(showOnly);
+    var freshness = scheduledRequestRetrieverService.getStackFreshness();
+    var history = queueMetricsService.getDepthHistory();
+
+    Map<String, String> trends = new HashMap<>();
+    for (var stack : stacks) {
+      trends.put(stack.code(), sparkline(history.stream()
+          .map(sample -> sample.stacks().get(stack.code().toUpperCase()))
+          .map(summary -> summary == null ? 0 : summary.total())
+          .toList(), SPARKLINE_WIDTH, SPARKLINE_HEIGHT));
+    }
+    Map<String, QueueMetricsService.RetrievalTimes> retrievalTimes = new HashMap<>();
+    queueMetricsService.getRetrievalTimes().forEach(t -> retrievalTimes.put(t.code(), t));
+
+    model.addAttribute("freshness", freshness);
+    model.addAttribute("lastSuccess", oldestUpdate(freshness, stackLocations.getStacks()));
+    model.addAttribute("showOnly", showOnly);
+    model.addAttribute("stacks", stacks);
+    model.addAttribute("retriever", scheduledRequestRetrieverService);
+    model.addAttribute("queues", pickslipQueues.snapshot());
+    model.addAttribute("trends", trends);
+    model.addAttribute("sparklineWidth", SPARKLINE_WIDTH);
+    model.addAttribute("sparklineHeight", SPARKLINE_HEIGHT);
+    model.addAttribute("samples", history.size());
+    model.addAttribute("since", history.isEmpty() ? null : history.get(0).time());
+    model.addAttribute("retrievalTimes", retrievalTimes);
+    model.addAttribute("fragmentCache", stackFragmentCache.getStats());
+
+    if (principal != null) {
+      model.addAttribute("loggedInUser", ((OAuth2AuthenticationToken) principal).getPrincipal()
+          .getAttribute("preferred_username"));
+    }
+
+    return "status";
+  }
+
+  static final int SPARKLINE_WIDTH = 200;
+  static final int SPARKLINE_HEIGHT = 24;
+
+  // svg polyline points plotting values (left to right) scaled to fit width x height.
+  static String sparkline(List<Integer> values, int width, int height) {
+    int max = Math.max(1, values.stream().mapToInt(Integer::intValue).max().orElse(0));
+    StringBuilder points = new StringBuilder();
+    for (int i = 0; i < values.size(); i++) {
+      double x = values.size() == 1 ? width : (double) i * width / (values.size() - 1);
+      double y = height - (double) values.get(i) * height / max;
+      points.append(String.format(Locale.ROOT, "%.1f,%.1f ", x, y));
+    }
+    return points.toString().trim();
+  }
+
+  // strong ETag for a page of queues: changes with the model version, the stacks shown (and their
+  // freshness, shown in the header), showOnly and the user.  Hashed - it mustn't reveal the user.
+  static String pageETag(String page, PickslipQueues.Snapshot queues, String[] showOnly,
+                         List<StackLocations.Location> stacks,
+                         Map<String, StackFreshness> freshness, Principal principal) {
+    return pageETag(page, queues, showOnly, stacks, freshness, principal, LocalDateTime.now());
+  }
+
+  static String pageETag(String page, PickslipQueues.Snapshot queues, String[] showOnly,
+                         List<StackLocations.Location> stacks,
+                         Map<String, StackFreshness> freshness, Principal principal,
+                         LocalDateTime now) {
+    StringBuilder key = new StringBuilder(page)
+        .append('|').append(queues.getVersion())
+        .append('|').append(showOnly == null ? "" : String.join(",", showOnly))
+        .append('|').append(principal == null ? "" : principal.getName());
+    for (var stack : stacks) {
+      var f = freshness.get(stack.code());
+      key.append('|').append(stack.code()).append('=').append(f);
+      // the header shows how long a stale stack hasn't been updated for, in whole minutes.
+      if (f != null && f.stale() && f.updated() != null) {
+        key.append('/').append(Duration.between(f.updated(), now).toMinutes());
+      }
+    }
+    return "\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8))
+        + "\"";
+  }
+
+  // true (and 304 Not Modified sent) if the client already has this version of the page.  Pages
+  // are revalidated on every request, and only cached by the browser - they differ by user.
+  private boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                              String etag) {
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+    return new ServletWebRequest(request, response).checkNotModified(etag);
+  }
+
+  // oldest pickslip update of the given stacks - how fresh a page showing them is.  Null if any
+  // hasn't been retrieved yet.
+  private LocalDateTime oldestUpdate(Map<String, StackFreshness> freshness,
+                                     List<StackLocations.Location> stacks) {
+    LocalDateTime oldest = null;
+    for (var stack : stacks) {
+      var f = freshness.get(stack.code());
+      if (f == null || f.updated() == null) {
+        return null;
+      }
+      if (oldest == null || f.updated().isBefore(oldest)) {
+        oldest = f.updated();
+      }
+    }
+    return oldest;
+  }
+
   private List<StackLocations.Location> filterStackLocations(String[] stackCodes) {
 
     List<StackLocations.Location> stackList = null;
@@ -0,0 +1,258 @@
+package au.gov.nla.pickslip.controller;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.service.QueueDeltaLog;
+import au.gov.nla.pickslip.service.QueueEventService;
+import au.gov.nla.pickslip.service.QueueMetricsService;
+import au.gov.nla.pickslip.service.ScheduledRequestRetrieverService;
+import au.gov.nla.pickslip.service.StackFragmentCache;
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/*
+  JSON views of the request queues - for dashboards and wall displays which poll, rather than
+  rendering full pages.  Pollers of the queues pass the version of their last response as since,
+  and get only what changed after it (see QueueDeltaLog).
+*/
+@RestController
+@RequestMapping("/api")
+public class QueueApiController {
+
+  @Autowired PickslipQueues pickslipQueues;
+
+  @Autowired StackLocations stackLocations;
+
+  @Autowired ScheduledRequestRetrieverService scheduledRequestRetrieverService;
+
+  @Autowired QueueMetricsService queueMetricsService;
+
+  @Autowired QueueEventService queueEventService;
+
+  @Autowired StackFragmentCache stackFragmentCache;
+
+  @Autowired QueueDeltaLog queueDeltaLog;
+
+  public record Summary(long version, List<PickslipQueues.StackSummary> stacks) {}
+
+  // a request as the pages show it.  The API is anonymous, so leaves out what they don't: the
+  // requester's FOLIO id and barcode, and patron comments.
+  public record Row(
+      boolean visiting,
+      boolean parked,
+      Request request,
+      PickslipQueues.Pickslip.Item item,
+      PickslipQueues.Pickslip.Instance instance) {
+
+    public record Request(
+        String id,
+        Requester requester,
+        ZonedDateTime requestDate,
+        String patronGroup,
+        String status,
+        String position,
+        List<String> tagList) {}
+
+    public record Requester(String firstName, String lastName) {}
+
+    static Row of(PickslipQueues.Pickslip pickslip) {
+      var request = pickslip.request();
+      var requester = request.requester();
+      return new Row(
+          pickslip.visiting(),
+          pickslip.parked(),
+          new Request(
+              request.id(),
+              requester == null ? null : new Requester(requester.firstName(), requester.lastName()),
+              request.requestDate(),
+              request.patronGroup(),
+              request.status(),
+              request.position(),
+              request.tagList()),
+          pickslip.item(),
+          pickslip.instance());
+    }
+  }
+
+  public record SearchResult(String stackCode, Row pickslip) {
+
+    static SearchResult of(PickslipQueues.Snapshot.SearchResult result) {
+      return new SearchResult(result.stackCode(), Row.of(result.pickslip()));
+    }
+
+    static List<SearchResult> of(List<PickslipQueues.Snapshot.SearchResult> results) {
+      return results.stream().map(SearchResult::of).toList();
+    }
+  }
+
+  public record ScanResult(String barcode, List<SearchResult> items, List<SearchResult> patron) {}
+
+  // a stack's queue (or visitors) at a version.  For a delta (full false) just the requests added
+  // or changed, and the ids of those removed; stacks without changes are left out.
+  public record StackRows(String code, List<Row> pickslips, Set<String> removed) {}
+
+  public record Queues(long version, boolean full, List<StackRows> stacks) {}
+
+  public record Status(
+      LocalDateTime lastStarted,
+      LocalDateTime lastCompleted,
+      LocalDateTime lastFailed,
+      long refreshIntervalSeconds,
+      StackFragmentCache.Stats fragmentCache,
+      List<QueueMetricsService.RetrievalTimes> retrievalTimes,
+      List<QueueMetricsService.DepthSample> depthHistory) {}
+
+  // retriever state, time to retrieval percentiles by stack, and the most recent queue depth
+  // samples (oldest first) - see HomeController.status.
+  @GetMapping("/status")
+  public Status status(@RequestParam(defaultValue = "100") int samples) {
+    var history = queueMetricsService.getDepthHistory();
+    return new Status(
+        scheduledRequestRetrieverService.getLastStarted(),
+        scheduledRequestRetrieverService.getLastCompleted(),
+        scheduledRequestRetrieverService.getLastFailed(),
+        scheduledRequestRetrieverService.getRefreshInterval().toSeconds(),
+        stackFragmentCache.getStats(),
+        queueMetricsService.getRetrievalTimes(),
+        history.subList(Math.max(0, history.size() - Math.max(0, samples)), history.size()));
+  }
+
+  // server-sent events as the queues change - see QueueEventService.
+  @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter events() {
+    return queueEventService.subscribe();
+  }
+
+  // queues of all stacks (or those in showOnly) - everything, or since a version just the requests
+  // added or changed and ids of those gone.
+  @GetMapping("/queues")
+  public Queues queues(
+      @RequestParam(required = false) Long since,
+      @RequestParam(required = false) String[] showOnly) {
+    return queues(since, filterStackLocations(showOnly), false);
+  }
+
+  // one stack's queue - see queues.
+  @GetMapping("/queues/{stack}")
+  public Queues queue(
+      @PathVariable(value = "stack") String stackCode, @RequestParam(required = false) Long since) {
+    return queues(since, List.of(getStack(stackCode)), false);
+  }
+
+  // requests from other stacks temporarily reassigned (tagged) to this one - see queues.
+  @GetMapping("/queues/{stack}/visitors")
+  public Queues visitors(
+      @PathVariable(value = "stack") String stackCode, @RequestParam(required = false) Long since) {
+    return queues(since, List.of(getStack(stackCode)), true);
+  }
+
+  // a single request, and the stack it's queued in.
+  @GetMapping("/requests/{requestId}")
+  public SearchResult request(@PathVariable String requestId) {
+    var queues = pickslipQueues.snapshot();
+    var pickslip = queues.getPickslipByRequestId(requestId);
+    if (pickslip == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    return new SearchResult(queues.getStackCodeForRequestId(requestId), Row.of(pickslip));
+  }
+
+  private Queues queues(Long since, List<StackLocations.Location> stacks, boolean visitors) {
+
+    var queues = pickslipQueues.snapshot();
+    var changed = since == null ? null : queueDeltaLog.changedSince(since, queues.getVersion());
+
+    List<StackRows> rows = new ArrayList<>();
+    for (var stack : stacks) {
+      var current =
+          visitors
+              ? queues.getVisitorsForStack(stack.code())
+              : queues.getPickslipsForStack(stack.code());
+      if (current == null) {
+        current = List.of();
+      }
+      if (changed == null) {
+        rows.add(new StackRows(stack.code(), current.stream().map(Row::of).toList(), Set.of()));
+        continue;
+      }
+
+      // of the requests which changed in this stack, those still here and the ids of the rest.
+      var ids =
+          (visitors ? changed.visitors() : changed.queues())
+              .getOrDefault(stack.code().toUpperCase(), Set.of());
+      if (ids.isEmpty()) {
+        continue;
+      }
+      Set<String> removed = new LinkedHashSet<>(ids);
+      List<Row> pickslips = new ArrayList<>();
+      for (var pickslip : current) {
+        if (removed.remove(pickslip.request().id().toLowerCase())) {
+          pickslips.add(Row.of(pickslip));
+        }
+      }
+      rows.add(new StackRows(stack.code(), pickslips, removed));
+    }
+    return new Queues(queues.getVersion(), changed == null, rows);
+  }
+
+  private StackLocations.Location getStack(String stackCode) {
+    var stack = stackLocations.getStackForCode(stackCode);
+    if (stack == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+    return stack;
+  }
+
+  private List<StackLocations.Location> filterStackLocations(String[] showOnly) {
+    return (showOnly == null || showOnly.length == 0)
+        ? stackLocations.getStacks()
+        : Arrays.stream(showOnly)
+            .map(stackLocations::getStackForCode)
+            .filter(Objects::nonNull)
+            .toList();
+  }
+
+  // requests in any stack matching all terms of q (as word prefixes) - see HomeController.search.
+  @GetMapping("/search")
+  public List<SearchResult> search(@RequestParam String q) {
+    return SearchResult.of(pickslipQueues.snapshot().search(q, HomeController.SEARCH_LIMIT));
+  }
+
+  // requests for a scanned item barcode, or failing that (signed in only) patron barcode - see
+  // HomeController.scan.
+  @GetMapping("/scan")
+  public ScanResult scan(@RequestParam String barcode, final Principal principal) {
+    var result = pickslipQueues.snapshot().scan(barcode, principal != null);
+    return new ScanResult(
+        result.barcode(), SearchResult.of(result.items()), SearchResult.of(result.patron()));
+  }
+
+  // per-stack counts (precomputed with each snapshot), in configured stack order.
+  @GetMapping("/summary")
+  public Summary summary(@RequestParam(required = false) String[] showOnly) {
+
+    var queues = pickslipQueues.snapshot();
+    var stacks = filterStackLocations(showOnly);
+
+    return new Summary(
+        queues.getVersion(),
+        stacks.stream().map(s -> queues.getSummaryForStack(s.code())).toList());
+  }
+}
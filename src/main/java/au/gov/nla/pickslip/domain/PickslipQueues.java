@@ -4,6 +4,9 @@ import au.gov.nla.pickslip.StackLocations;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,11 +33,30 @@ public class PickslipQueues {
   private Logger log = LoggerFactory.getLogger(this.getClass());
 
   private LocalDateTime lastUpdated;
+  private long unchangedUpdates;
+
+  // location codes of requests in the last build which aren't in FOLIO's locations.
+  private Set<String> unknownLocationCodes = Set.of();
 
   // backing source data - FOLIO and config file data.
 
-  // derived data model for this app.
-  private Map<ServicePoint, List<Pickslip>> servicePointPickslips;
+  // reference data last used to build the derived maps below (compared by identity).
+  private List<FolioServicePoint> referenceServicePoints;
+  private List<FolioLocation> referenceLocations;
+
+  // derived from reference data and config.
+  private List<String> servicePointCodes;
+  private Map<String, ServicePoint> locationServicePointMap;
+  private Set<String> locationCodes;
+
+  // source data last used to build the model (compared by identity - FolioService hands back the
+  // same instances when a FOLIO payload hasn't changed).
+  private List<FolioRequest> sourceRequests;
+  private Map<FolioServicePoint, List<FolioPickslip>> sourcePickslips;
+
+  // derived data model for this app - published as immutable, versioned snapshots.  Readers take
+  // the current snapshot once (snapshot()) to see one consistent version throughout.
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
 
   // domain model of a stack service point - driven by config file
   public record ServicePoint(
@@ -42,6 +64,14 @@ public class PickslipQueues {
       String code, // config file and FOLIO
       String label // config file
       ) {}
+
+  // a configured stack isn't among FOLIO's service points - perhaps new since reference data was
+  // loaded.
+  public static class ReferenceDataException extends IllegalStateException {
+    public ReferenceDataException(String message) {
+      super(message);
+    }
+  }
   ;
 
   // domain model of a pickslip, constructed from FOLIO request and pickslip data.
@@ -111,6 +141,14 @@ public class PickslipQueues {
     public record Instance(String id, String title) {}
     ;
 
+    // shown in place of pickslip details which aren't available (e.g. "In transit" requests).
+    private static final String UNAVAILABLE = "(Unavailable)";
+    private static final String UNAVAILABLE_SHORT = "(?)";
+
+    static boolean isPlaceholder(String s) {
+      return UNAVAILABLE.equals(s) || UNAVAILABLE_SHORT.equals(s);
+    }
+
     // return true if String 's' is in the 'list', unless it's equal to the 'except' value.
     private static boolean inList(String s, String except, List<String> list) {
       return !s.equalsIgnoreCase(except) && list.stream().anyMatch(s::equalsIgnoreCase);
@@ -119,8 +157,6 @@ public class PickslipQueues {
     static Pickslip fromFolioPickSlipAndRequest(
         List<String> servicePointCodes, String except, FolioPickslip fps, FolioRequest fr) {
 
-      final String UNAVAILABLE = "(Unavailable)";
-      final String UNAVAILABLE_SHORT = "(?)";
       final String TAG_PARKED = "parked";
 
       Request request =
@@ -188,23 +224,28 @@ public class PickslipQueues {
   }
   ;
 
-  // return matching FolioRequest from list
-  private FolioPickslip findFolioPickslipByRequestId(
-      Map<FolioServicePoint, List<FolioPickslip>> folioPickslipsByServicePoint, String requestId) {
+  // sort: status; then by request date.  Head of list is most recent; "In transit" status at end.
+  private static final Comparator<Pickslip> PICKSLIP_ORDER =
+      Comparator.comparing((Pickslip a) -> a.request.status)
+          .thenComparing(a -> a.request.requestDate)
+          .reversed();
+
+  // index pickslips (for all service points) by request id.
+  private static Map<String, FolioPickslip> indexPickslipsByRequestId(
+      Map<FolioServicePoint, List<FolioPickslip>> folioPickslipsByServicePoint) {
+    Map<String, FolioPickslip> index = new HashMap<>();
     for (var fpsList : folioPickslipsByServicePoint.values()) {
       if (fpsList != null) {
         for (var fps : fpsList) {
-          if (requestId.equals(fps.requestId())) {
-            return fps;
-          }
+          index.putIfAbsent(fps.requestId(), fps);
         }
       }
     }
-    return null;
+    return index;
   }
 
-  // update model with new data
-  public void update(
+  // update model with new data, returning what changed (empty if nothing did).
+  public QueueDelta update(
       StackLocations stackLocations, // config file, unchanging
       List<FolioRequest> folioNotFilledRequests, // all not filled requests from FOLIO
       List<FolioServicePoint> folioServicePoints, // all service point records from FOLIO
@@ -215,6 +256,120 @@ public class PickslipQueues {
           folioPickslipsByServicePoint) { // all pickslips for NOT YET FILLED requests for all
     // service points
 
+    // nothing has changed since the last update - keep the model as is.
+    if (folioNotFilledRequests == this.sourceRequests
+        && folioServicePoints == this.referenceServicePoints
+        && folioLocations == this.referenceLocations
+        && sameValues(folioPickslipsByServicePoint, this.sourcePickslips)) {
+      this.unchangedUpdates++;
+      this.lastUpdated = LocalDateTime.now();
+      log.debug("Source data unchanged - model not rebuilt");
+      long version = this.snapshot.get().getVersion();
+      return new QueueDelta(version, version, List.of());
+    }
+
+    // reference data is cached upstream - only rebuild what's derived from it when it changes.
+    if (folioServicePoints != this.referenceServicePoints
+        || folioLocations != this.referenceLocations) {
+      rebuildReferenceMaps(stackLocations, folioServicePoints, folioLocations);
+    }
+
+    Map<String, FolioPickslip> pickslipsByRequestId =
+        indexPickslipsByRequestId(folioPickslipsByServicePoint);
+
+    // group requests by stack service point (keeping request order)..
+    Map<ServicePoint, List<FolioRequest>> requestsByServicePoint = new HashMap<>();
+    Set<String> unknownLocationCodes = new HashSet<>();
+    for (var req : folioNotFilledRequests) {
+      ServicePoint sp = this.locationServicePointMap.get(req.item().location().code());
+      if (sp == null) {
+        log.error(String.format("Service Point null for request: %s (continuing)", req));
+        if (!this.locationCodes.contains(req.item().location().code())) {
+          unknownLocationCodes.add(req.item().location().code());
+        }
+        continue;
+      }
+      requestsByServicePoint.computeIfAbsent(sp, k -> new ArrayList<>()).add(req);
+    }
+
+    // .. then build and sort each service point's pickslips in parallel (common fork-join pool).
+    Map<ServicePoint, List<Pickslip>> servicePointPickslips =
+        requestsByServicePoint.entrySet().parallelStream()
+            .collect(
+                Collectors.toMap(
+                    Map.Entry::getKey,
+                    e -> buildPickslips(e.getKey(), e.getValue(), pickslipsByRequestId)));
+
+    Snapshot previous = this.snapshot.get();
+    Snapshot next =
+        new Snapshot(previous.getVersion() + 1, servicePointPickslips, this.servicePointCodes);
+    QueueDelta delta = next.diff(previous);
+    this.sourceRequests = folioNotFilledRequests;
+    this.unknownLocationCodes = Set.copyOf(unknownLocationCodes);
+    this.sourcePickslips = new HashMap<>(folioPickslipsByServicePoint);
+    this.lastUpdated = LocalDateTime.now();
+
+    // rebuilt, but nothing anyone can see changed (e.g. new reference data): keep the previous
+    // snapshot, so a version is only ever published (and saved) with its changes, and always
+    // means the same queues - clients compare versions (ETags, since=) to tell what changed.  The
+    // first build is kept regardless, even if there are no requests.
+    if (delta.isEmpty() && previous.getVersion() > 0) {
+      log.debug("Model rebuilt without changes - keeping version {}", previous.getVersion());
+      return new QueueDelta(previous.getVersion(), previous.getVersion(), List.of());
+    }
+    this.snapshot.set(next);
+
+    return delta;
+  }
+
+  // pickslips for a service point's requests, in display order.
+  private List<Pickslip> buildPickslips(
+      ServicePoint sp, List<FolioRequest> requests, Map<String, FolioPickslip> pickslipsByRequestId) {
+    List<Pickslip> pickslips = new ArrayList<>(requests.size());
+    for (var req : requests) {
+      pickslips.add(
+          Pickslip.fromFolioPickSlipAndRequest(
+              this.servicePointCodes, sp.code, pickslipsByRequestId.get(req.id()), req));
+    }
+    pickslips.sort(PICKSLIP_ORDER);
+    return pickslips;
+  }
+
+  // true if both maps have the same keys, each mapped to the same list instance.
+  private static boolean sameValues(
+      Map<FolioServicePoint, List<FolioPickslip>> a, Map<FolioServicePoint, List<FolioPickslip>> b) {
+    if (b == null || a.size() != b.size()) {
+      return false;
+    }
+    for (var e : a.entrySet()) {
+      if (!b.containsKey(e.getKey()) || b.get(e.getKey()) != e.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public LocalDateTime getLastUpdated() {
+    return this.lastUpdated;
+  }
+
+  // location codes of requests (left out of the model) which aren't in FOLIO's locations as of
+  // the last build - perhaps new since reference data was loaded.
+  public Set<String> getUnknownLocationCodes() {
+    return this.unknownLocationCodes;
+  }
+
+  // number of updates skipped because the source data was unchanged.
+  public long getUnchangedUpdates() {
+    return this.unchangedUpdates;
+  }
+
+  // build stack service points and the location code -> service point map from reference data.
+  private void rebuildReferenceMaps(
+      StackLocations stackLocations,
+      List<FolioServicePoint> folioServicePoints,
+      List<FolioLocation> folioLocations) {
+
     // loc -> FolioSp
     List<ServicePoint> servicePoints =
         stackLocations.getStacks().stream()
@@ -226,50 +381,32 @@ public class PickslipQueues {
                         location.label()))
             .toList();
 
-    List<String> servicePointCodes = servicePoints.stream().map(ServicePoint::code).toList();
+    // id -> service point (ids compared ignoring case)
+    Map<String, ServicePoint> servicePointsById = new HashMap<>();
+    for (var xSp : servicePoints) {
+      servicePointsById.put(xSp.id().toLowerCase(), xSp);
+    }
 
     // code -> service point
     Map<String, ServicePoint> locationServicePointMap = new HashMap<>();
     for (var fLoc : folioLocations) {
-      for (var xSp : servicePoints) {
-        if (xSp.id().equalsIgnoreCase(fLoc.primaryServicePoint())) {
-          locationServicePointMap.put(fLoc.code(), xSp);
-        }
-      }
-    }
-
-    Map<ServicePoint, List<Pickslip>> servicePointPickslips = new HashMap<>();
-
-    for (var req : folioNotFilledRequests) {
-
-      FolioPickslip fps = findFolioPickslipByRequestId(folioPickslipsByServicePoint, req.id());
-      ServicePoint sp = locationServicePointMap.get(req.item().location().code());
-      if (sp == null) {
-        log.error(String.format("Service Point null for request: %s (continuing)", req));
-        continue;
+      var xSp =
+          fLoc.primaryServicePoint() == null
+              ? null
+              : servicePointsById.get(fLoc.primaryServicePoint().toLowerCase());
+      if (xSp != null) {
+        locationServicePointMap.put(fLoc.code(), xSp);
       }
-      Pickslip pickslip =
-          Pickslip.fromFolioPickSlipAndRequest(servicePointCodes, sp.code, fps, req);
-
-      // add pickslip
-      List<Pickslip> pickslips = servicePointPickslips.get(sp);
-      if (pickslips == null) {
-        pickslips = new ArrayList<>();
-      }
-      pickslips.add(pickslip);
-      servicePointPickslips.put(sp, pickslips);
     }
 
-    // sort: status; then by request date.  Head of list is most recent; "In transit" status at end.
-    for (var pickslips : servicePointPickslips.values()) {
-      pickslips.sort(
-          Comparator.comparing((Pickslip a) -> a.request.status)
-              .thenComparing(a -> a.request.requestDate)
-              .reversed());
-    }
+    this.servicePointCodes = servicePoints.stream().map(ServicePoint::code).toList();
+    this.locationServicePointMap = locationServicePointMap;
+    this.locationCodes =
+        folioLocations.stream().map(FolioLocation::code).collect(Collectors.toSet());
+    this.referenceServicePoints = folioServicePoints;
+    this.referenceLocations = folioLocations;
 
-    this.servicePointPickslips = servicePointPickslips;
-    this.lastUpdated = LocalDateTime.now();
+    log.debug("Location -> service point map rebuilt: {} locations", locationServicePointMap.size());
   }
 
   // return matching FolioServicePoint from list.
@@ -278,71 +415,353 @@ public class PickslipQueues {
         .filter(sp -> code.equals(sp.code()))
         .findFirst()
         .orElseThrow(
-            () -> new IllegalStateException("Code not present in FOLIO ServicePoints: " + code));
+            () -> new ReferenceDataException("Code not present in FOLIO ServicePoints: " + code));
   }
 
-  // get items from other stack locations which are temporarily reassigned to this stack.
-  // for all pickslips - pick out the ones with a tag which corresponds to stackCode.
+  // the current snapshot of the model.
+  public Snapshot snapshot() {
+    return this.snapshot.get();
+  }
+
+  // publish a snapshot saved by an earlier run (see SnapshotCodec), to show until the first
+  // update replaces it.  Versions carry on from the saved one.  Ignored (false) once built.
+  public boolean restore(Snapshot saved) {
+    return this.snapshot.compareAndSet(Snapshot.EMPTY, saved);
+  }
+
+  // convenience lookups, each against the current snapshot.  For several related lookups (a page,
+  // a bulk print) take a snapshot() and use that.
+
   public List<Pickslip> getVisitorsForStack(String stackCode) {
-    List<Pickslip> result = new ArrayList<>();
-
-    if (servicePointPickslips == null) {
-      return null;
-    }
-
-    for (var servicePoint : servicePointPickslips.keySet()) {
-      if (!stackCode.equalsIgnoreCase(servicePoint.code())) {
-        var pickslips = servicePointPickslips.get(servicePoint);
-        if (pickslips != null) {
-          for (var pickslip : pickslips) {
-            List<String> tags = pickslip.request.tagList;
-            if (tags != null) {
-              if (tags.stream().anyMatch(s -> stackCode.equalsIgnoreCase(s))) {
-                result.add(pickslip);
-              }
+    return snapshot().getVisitorsForStack(stackCode);
+  }
+
+  public List<Pickslip> getPickslipsForStack(String stackCode) {
+    return snapshot().getPickslipsForStack(stackCode);
+  }
+
+  public Pickslip getPickslipByRequestId(String requestId) {
+    return snapshot().getPickslipByRequestId(requestId);
+  }
+
+  // aggregate counts for a stack's queue, computed once per snapshot.
+  public record StackSummary(
+      String code,
+      int total,
+      Map<String, Integer> byStatus,
+      int parked,
+      int visiting, // in this stack's queue, flagged for another stack
+      int visitors, // from other stacks, flagged for this one
+      ZonedDateTime oldestNotYetFilled) {
+
+    static StackSummary of(String code, List<Pickslip> queue, List<Pickslip> visitors) {
+      Map<String, Integer> byStatus = new TreeMap<>();
+      int parked = 0, visiting = 0;
+      ZonedDateTime oldest = null;
+      for (var pickslip : queue) {
+        String status = Objects.requireNonNullElse(pickslip.request().status(), "");
+        byStatus.merge(status, 1, Integer::sum);
+        parked += pickslip.parked() ? 1 : 0;
+        visiting += pickslip.visiting() ? 1 : 0;
+        var requestDate = pickslip.request().requestDate();
+        if (pickslip.request().isNotYetFilled()
+            && requestDate != null
+            && (oldest == null || requestDate.isBefore(oldest))) {
+          oldest = requestDate;
+        }
+      }
+      return new StackSummary(
+          code,
+          queue.size(),
+          Collections.unmodifiableMap(byStatus),
+          parked,
+          visiting,
+          visitors == null ? 0 : visitors.size(),
+          oldest);
+    }
+  }
+
+  /*
+    One version of the model: every stack's queue of pickslips, with lookups by stack code and
+    request id precomputed.  Immutable - shared freely between threads.
+  */
+  public static final class Snapshot {
+
+    static final Snapshot EMPTY = new Snapshot(0, null, List.of());
+
+    private final long version;
+    private final List<String> servicePointCodes;
+
+    // all null until the model is first built.
+    private final Map<ServicePoint, List<Pickslip>> servicePointPickslips;
+    private final Map<String, List<Pickslip>> queuesByStackCode; // upper case code
+    private final Map<String, Pickslip> pickslipsByRequestId; // lower case id
+    private final Map<String, String> stackCodeByRequestId; // lower case id
+    private final Map<String, List<Pickslip>> visitorsByStackCode; // upper case code
+    private final Map<String, StackSummary> summariesByStackCode; // upper case code
+    private final PickslipSearchIndex searchIndex;
+    private final Map<String, List<Pickslip>> pickslipsByItemBarcode; // normalised barcode
+    private final Map<String, List<Pickslip>> pickslipsByPatronBarcode; // normalised barcode
+
+    Snapshot(
+        long version,
+        Map<ServicePoint, List<Pickslip>> servicePointPickslips,
+        List<String> servicePointCodes) {
+      this.version = version;
+      this.servicePointCodes = List.copyOf(servicePointCodes);
+
+      if (servicePointPickslips == null) {
+        this.servicePointPickslips = null;
+        this.queuesByStackCode = null;
+        this.pickslipsByRequestId = null;
+        this.stackCodeByRequestId = null;
+        this.visitorsByStackCode = null;
+        this.summariesByStackCode = Map.of();
+        this.searchIndex = PickslipSearchIndex.EMPTY;
+        this.pickslipsByItemBarcode = Map.of();
+        this.pickslipsByPatronBarcode = Map.of();
+        return;
+      }
+
+      Map<ServicePoint, List<Pickslip>> queues = new HashMap<>();
+      Map<String, List<Pickslip>> queuesByStackCode = new HashMap<>();
+      Map<String, Pickslip> pickslipsByRequestId = new HashMap<>();
+      Map<String, String> stackCodeByRequestId = new HashMap<>();
+      for (var e : servicePointPickslips.entrySet()) {
+        var queue = List.copyOf(e.getValue());
+        queues.put(e.getKey(), queue);
+        queuesByStackCode.put(e.getKey().code().toUpperCase(), queue);
+        for (var pickslip : queue) {
+          String id = pickslip.request().id().toLowerCase();
+          if (pickslipsByRequestId.putIfAbsent(id, pickslip) == null) {
+            stackCodeByRequestId.put(id, e.getKey().code());
+          }
+        }
+      }
+
+      this.servicePointPickslips = Collections.unmodifiableMap(queues);
+      this.queuesByStackCode = Collections.unmodifiableMap(queuesByStackCode);
+      this.pickslipsByRequestId = Collections.unmodifiableMap(pickslipsByRequestId);
+      this.stackCodeByRequestId = Collections.unmodifiableMap(stackCodeByRequestId);
+      this.visitorsByStackCode = indexVisitors(queues, servicePointCodes);
+
+      Map<String, StackSummary> summaries = new HashMap<>();
+      queuesByStackCode.forEach(
+          (code, queue) ->
+              summaries.put(code, StackSummary.of(code, queue, visitorsByStackCode.get(code))));
+      visitorsByStackCode.forEach(
+          (code, visitors) ->
+              summaries.putIfAbsent(code, StackSummary.of(code, List.of(), visitors)));
+      this.summariesByStackCode = Collections.unmodifiableMap(summaries);
+
+      List<Pickslip> all = new ArrayList<>(pickslipsByRequestId.values());
+      all.sort(PICKSLIP_ORDER);
+      this.searchIndex = new PickslipSearchIndex(all);
+      this.pickslipsByItemBarcode = indexByBarcode(all, p -> p.item().barcode());
+      this.pickslipsByPatronBarcode = indexByBarcode(all, p -> p.request().requester().barcode());
+    }
+
+    // pickslips by barcode (an item can have several requests, a patron many), in the order given.
+    private static Map<String, List<Pickslip>> indexByBarcode(
+        List<Pickslip> pickslips, Function<Pickslip, String> barcode) {
+      Map<String, List<Pickslip>> index = new HashMap<>();
+      for (var pickslip : pickslips) {
+        String value = barcode.apply(pickslip);
+        String key = normaliseBarcode(value);
+        if (key != null && !Pickslip.isPlaceholder(value)) {
+          index.computeIfAbsent(key, k -> new ArrayList<>()).add(pickslip);
+        }
+      }
+      index.replaceAll((k, v) -> List.copyOf(v));
+      return Collections.unmodifiableMap(index);
+    }
+
+    // scanners (keyboard wedges) can add surrounding whitespace.  Null if there's nothing left.
+    static String normaliseBarcode(String barcode) {
+      if (barcode == null) {
+        return null;
+      }
+      String trimmed = barcode.strip();
+      return trimmed.isEmpty() ? null : trimmed.toLowerCase();
+    }
+
+    // visitors to each stack, from an index of pickslips by tag: a pickslip visits every (other)
+    // stack whose code is one of its tags.  Lists are sorted once, here.
+    private static Map<String, List<Pickslip>> indexVisitors(
+        Map<ServicePoint, List<Pickslip>> queues, List<String> servicePointCodes) {
+
+      Set<String> stackCodes = new HashSet<>();
+      servicePointCodes.forEach(code -> stackCodes.add(code.toUpperCase()));
+
+      Map<String, List<Pickslip>> visitorsByTag = new HashMap<>();
+      for (var e : queues.entrySet()) {
+        String ownCode = e.getKey().code().toUpperCase();
+        for (var pickslip : e.getValue()) {
+          List<String> tags = pickslip.request.tagList;
+          if (tags == null) {
+            continue;
+          }
+          Set<String> visiting = new HashSet<>();
+          for (var tag : tags) {
+            String code = tag.toUpperCase();
+            if (!code.equals(ownCode) && stackCodes.contains(code) && visiting.add(code)) {
+              visitorsByTag.computeIfAbsent(code, k -> new ArrayList<>()).add(pickslip);
             }
           }
         }
       }
+
+      Map<String, List<Pickslip>> visitors = new HashMap<>();
+      visitorsByTag.forEach(
+          (code, pickslips) -> {
+            pickslips.sort(PICKSLIP_ORDER);
+            visitors.put(code, List.copyOf(pickslips));
+          });
+      return Collections.unmodifiableMap(visitors);
     }
 
-    // sort: status; then by request date.  Head of list is most recent; "In transit" status at end.
-    result.sort(
-        Comparator.comparing((Pickslip a) -> a.request.status)
-            .thenComparing(a -> a.request.requestDate)
-            .reversed());
+    // changes from an earlier snapshot to this one, by request.
+    public QueueDelta diff(Snapshot previous) {
 
-    return result;
-  }
+      Map<String, Pickslip> before =
+          previous.pickslipsByRequestId == null ? Map.of() : previous.pickslipsByRequestId;
+      Map<String, Pickslip> after = this.pickslipsByRequestId == null ? Map.of() : this.pickslipsByRequestId;
 
-  public List<Pickslip> getPickslipsForStack(String stackCode) {
+      List<QueueDelta.Change> changes = new ArrayList<>();
+
+      for (var e : after.entrySet()) {
+        String id = e.getKey();
+        Pickslip now = e.getValue();
+        Pickslip was = before.get(id);
+        String toStack = this.stackCodeByRequestId.get(id);
 
-    if (this.servicePointPickslips == null) {
-      return null;
+        if (was == null) {
+          changes.add(change(QueueDelta.ChangeType.ADDED, null, toStack, null, now));
+          continue;
+        }
+        if (was.equals(now) && toStack.equals(previous.stackCodeByRequestId.get(id))) {
+          continue;
+        }
+
+        String fromStack = previous.stackCodeByRequestId.get(id);
+        boolean changed = false;
+        if (!toStack.equals(fromStack)) {
+          changes.add(change(QueueDelta.ChangeType.MOVED, fromStack, toStack, was, now));
+          changed = true;
+        }
+        if (!Objects.equals(was.request().status(), now.request().status())) {
+          changes.add(change(QueueDelta.ChangeType.STATUS_CHANGED, fromStack, toStack, was, now));
+          changed = true;
+        }
+        if (!Objects.equals(was.request().tagList(), now.request().tagList())) {
+          changes.add(change(QueueDelta.ChangeType.TAGS_CHANGED, fromStack, toStack, was, now));
+          changed = true;
+        }
+        if (!changed) {
+          changes.add(change(QueueDelta.ChangeType.UPDATED, fromStack, toStack, was, now));
+        }
+      }
+
+      for (var e : before.entrySet()) {
+        if (!after.containsKey(e.getKey())) {
+          String fromStack = previous.stackCodeByRequestId.get(e.getKey());
+          changes.add(change(QueueDelta.ChangeType.REMOVED, fromStack, null, e.getValue(), null));
+        }
+      }
+
+      return new QueueDelta(previous.version, this.version, List.copyOf(changes));
     }
 
-    var key =
-        this.servicePointPickslips.keySet().stream()
-            .filter(k -> stackCode.equals(k.code()))
-            .findFirst()
-            .orElse(null);
-    return key == null ? null : this.servicePointPickslips.get(key);
-  }
+    private static QueueDelta.Change change(
+        QueueDelta.ChangeType type, String fromStack, String toStack, Pickslip before, Pickslip after) {
+      String requestId = (after != null ? after : before).request().id();
+      return new QueueDelta.Change(type, requestId, fromStack, toStack, before, after);
+    }
 
-  // find a Pickslip by RequestId
-  public Pickslip getPickslipByRequestId(String requestId) {
+    public record SearchResult(String stackCode, Pickslip pickslip) {}
 
-    if (servicePointPickslips == null || servicePointPickslips.values() == null) {
-      return null;
+    // requests in any stack matching every term of the query as a prefix of a word in their
+    // title, contributors, call number, patron name or barcodes.  Most recent first.
+    public List<SearchResult> search(String query, int limit) {
+      return withStacks(searchIndex.search(query, limit));
     }
 
-    for (var pickslips : servicePointPickslips.values()) {
-      for (var pickslip : pickslips) {
-        if (pickslip != null && requestId.equalsIgnoreCase(pickslip.request().id())) {
-          return pickslip;
+    // requests for a scanned barcode: the item's requests, or failing that (if patrons, for
+    // signed in staff only) the patron's.
+    public record ScanResult(String barcode, List<SearchResult> items, List<SearchResult> patron) {
+
+      // the one request the scan identifies - null if there isn't exactly one.
+      public SearchResult single() {
+        if (items.size() == 1) {
+          return items.get(0);
         }
+        return items.isEmpty() && patron.size() == 1 ? patron.get(0) : null;
       }
     }
-    return null;
+
+    public ScanResult scan(String barcode, boolean patrons) {
+      String key = normaliseBarcode(barcode);
+      if (key == null) {
+        return new ScanResult(barcode, List.of(), List.of());
+      }
+      var items = pickslipsByItemBarcode.getOrDefault(key, List.of());
+      var patron =
+          items.isEmpty() && patrons
+              ? pickslipsByPatronBarcode.getOrDefault(key, List.<Pickslip>of())
+              : List.<Pickslip>of();
+      return new ScanResult(barcode, withStacks(items), withStacks(patron));
+    }
+
+    private List<SearchResult> withStacks(List<Pickslip> pickslips) {
+      return pickslips.stream()
+          .map(p -> new SearchResult(stackCodeByRequestId.get(p.request().id().toLowerCase()), p))
+          .toList();
+    }
+
+    // aggregate counts for a stack - an empty summary if it has no requests (or visitors).
+    public StackSummary getSummaryForStack(String stackCode) {
+      var summary = summariesByStackCode.get(stackCode.toUpperCase());
+      return summary != null ? summary : StackSummary.of(stackCode.toUpperCase(), List.of(), null);
+    }
+
+    // incremented each time the model is rebuilt.  0 until it's first built.
+    public long getVersion() {
+      return version;
+    }
+
+    // what the snapshot was built from - for SnapshotCodec.
+    Map<ServicePoint, List<Pickslip>> getServicePointPickslips() {
+      return servicePointPickslips;
+    }
+
+    List<String> getServicePointCodes() {
+      return servicePointCodes;
+    }
+
+    // get items from other stack locations which are temporarily reassigned to this stack - those
+    // with a tag which corresponds to stackCode.
+    public List<Pickslip> getVisitorsForStack(String stackCode) {
+      return visitorsByStackCode == null
+          ? null
+          : visitorsByStackCode.getOrDefault(stackCode.toUpperCase(), List.of());
+    }
+
+    public List<Pickslip> getPickslipsForStack(String stackCode) {
+      return queuesByStackCode == null ? null : queuesByStackCode.get(stackCode.toUpperCase());
+    }
+
+    // find a Pickslip by RequestId
+    public Pickslip getPickslipByRequestId(String requestId) {
+      return pickslipsByRequestId == null
+          ? null
+          : pickslipsByRequestId.get(requestId.toLowerCase());
+    }
+
+    // code of the stack whose queue a request is in (null if it's not in any).
+    public String getStackCodeForRequestId(String requestId) {
+      return stackCodeByRequestId == null
+          ? null
+          : stackCodeByRequestId.get(requestId.toLowerCase());
+    }
   }
 }
@@ -0,0 +1,148 @@
+package au.gov.nla.pickslip.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+  Inverted index over the pickslips of one snapshot, for finding requests across all stacks by
+  (partial) title, contributor, call number, patron name or barcode.
+
+  Values are split into lower case tokens (runs of letters and digits).  Tokens are held sorted,
+  so a query term matches every token it's a prefix of with a binary search then a short scan.
+  A query matches pickslips which match all of its terms.  Immutable - built once per snapshot.
+*/
+public final class PickslipSearchIndex {
+
+  static final PickslipSearchIndex EMPTY = new PickslipSearchIndex(List.of());
+
+  private final List<PickslipQueues.Pickslip> pickslips;
+
+  // sorted distinct tokens, and for each the (ascending) indexes of pickslips containing it.
+  private final String[] tokens;
+  private final int[][] postings;
+
+  PickslipSearchIndex(List<PickslipQueues.Pickslip> pickslips) {
+    this.pickslips = List.copyOf(pickslips);
+
+    Map<String, Postings> index = new HashMap<>();
+    for (int i = 0; i < this.pickslips.size(); i++) {
+      var p = this.pickslips.get(i);
+      for (var value :
+          Arrays.asList(
+              p.item().title(),
+              p.item().primaryContributor(),
+              p.item().allContributors(),
+              p.item().callNumber(),
+              p.item().barcode(),
+              p.request().requester().firstName(),
+              p.request().requester().lastName(),
+              p.request().requester().barcode())) {
+        if (value == null || PickslipQueues.Pickslip.isPlaceholder(value)) {
+          continue;
+        }
+        for (var token : tokenize(value)) {
+          index.computeIfAbsent(token, k -> new Postings()).add(i);
+        }
+      }
+    }
+
+    this.tokens = index.keySet().toArray(new String[0]);
+    Arrays.sort(this.tokens);
+    this.postings = new int[tokens.length][];
+    for (int t = 0; t < tokens.length; t++) {
+      postings[t] = index.get(tokens[t]).toArray();
+    }
+  }
+
+  // growable list of ascending pickslip indexes, ignoring repeats (a token twice in one pickslip).
+  private static final class Postings {
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int i) {
+      if (size > 0 && values[size - 1] == i) {
+        return;
+      }
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = i;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  // pickslips matching every term of the query (each as a prefix), in index order, up to limit.
+  public List<PickslipQueues.Pickslip> search(String query, int limit) {
+
+    var terms = tokenize(query);
+    if (terms.isEmpty()) {
+      return List.of();
+    }
+
+    BitSet matches = null;
+    for (var term : terms) {
+      var termMatches = matchPrefix(term);
+      if (matches == null) {
+        matches = termMatches;
+      } else {
+        matches.and(termMatches);
+      }
+      if (matches.isEmpty()) {
+        return List.of();
+      }
+    }
+
+    List<PickslipQueues.Pickslip> result = new ArrayList<>();
+    for (int i = matches.nextSetBit(0); i >= 0 && result.size() < limit; ) {
+      result.add(pickslips.get(i));
+      i = matches.nextSetBit(i + 1);
+    }
+    return result;
+  }
+
+  public int getTokenCount() {
+    return tokens.length;
+  }
+
+  private BitSet matchPrefix(String prefix) {
+    BitSet result = new BitSet(pickslips.size());
+    int i = Arrays.binarySearch(tokens, prefix);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    for (; i < tokens.length && tokens[i].startsWith(prefix); i++) {
+      for (int p : postings[i]) {
+        result.set(p);
+      }
+    }
+    return result;
+  }
+
+  // lower case runs of letters and digits.
+  static List<String> tokenize(String value) {
+    List<String> tokens = new ArrayList<>();
+    if (value == null) {
+      return tokens;
+    }
+    String lower = value.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lower.length(); i++) {
+      boolean tokenChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+      if (tokenChar && start < 0) {
+        start = i;
+      } else if (!tokenChar && start >= 0) {
+        tokens.add(lower.substring(start, i));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+}
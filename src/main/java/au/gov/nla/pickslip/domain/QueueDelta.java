@@ -0,0 +1,110 @@
+package au.gov.nla.pickslip.domain;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+  What changed between two versions (snapshots) of the PickslipQueues model.  Published as an
+  application event after each refresh which changes the model - subscribe with
+  @EventListener(QueueDelta.class) rather than rescanning the model.
+*/
+public record QueueDelta(long fromVersion, long toVersion, List<Change> changes) {
+
+  public enum ChangeType {
+    ADDED,
+    REMOVED,
+    MOVED, // to another stack
+    STATUS_CHANGED, // e.g. not yet filled -> in transit
+    TAGS_CHANGED,
+    UPDATED // anything else (e.g. pickslip details now available)
+  }
+
+  // a change to one request.  fromStack / before are null for ADDED; toStack / after for REMOVED.
+  public record Change(
+      ChangeType type,
+      String requestId,
+      String fromStack,
+      String toStack,
+      PickslipQueues.Pickslip before,
+      PickslipQueues.Pickslip after) {}
+
+  public boolean isEmpty() {
+    return changes.isEmpty();
+  }
+
+  // ids of requests added to, removed from and changed in one stack's queue or visitors.
+  public record StackChanges(Set<String> added, Set<String> removed, Set<String> changed) {
+
+    StackChanges() {
+      this(new LinkedHashSet<>(), new LinkedHashSet<>(), new LinkedHashSet<>());
+    }
+  }
+
+  // changes by (upper case) stack code: to each stack's queue - a move is a removal from one stack
+  // and an addition to another - and to its visitors, as changed (see visitorChangesByStack).
+  public Map<String, StackChanges> byStack() {
+    Map<String, StackChanges> stacks = queueChangesByStack();
+    visitorChangesByStack().forEach((code, ids) -> stack(stacks, code).changed().addAll(ids));
+    return stacks;
+  }
+
+  // changes to each stack's own queue, by (upper case) stack code.
+  public Map<String, StackChanges> queueChangesByStack() {
+    Map<String, StackChanges> stacks = new LinkedHashMap<>();
+    for (var change : changes) {
+      String id = change.requestId();
+      switch (change.type()) {
+        case ADDED -> stack(stacks, change.toStack()).added().add(id);
+        case REMOVED -> stack(stacks, change.fromStack()).removed().add(id);
+        case MOVED -> {
+          stack(stacks, change.fromStack()).removed().add(id);
+          stack(stacks, change.toStack()).added().add(id);
+        }
+        default -> stack(stacks, change.toStack()).changed().add(id);
+      }
+    }
+    return stacks;
+  }
+
+  // ids of requests which may have been added to, removed from or changed among the visitors of
+  // each stack, by (upper case) stack code: any change to a request tagged with the stack, before
+  // or after.
+  public Map<String, Set<String>> visitorChangesByStack() {
+    Map<String, Set<String>> stacks = new LinkedHashMap<>();
+    for (var change : changes) {
+      for (var pickslip : Arrays.asList(change.before(), change.after())) {
+        var tags = pickslip == null ? null : pickslip.request().tagList();
+        if (tags != null) {
+          tags.forEach(
+              tag ->
+                  stacks
+                      .computeIfAbsent(tag.toUpperCase(), k -> new LinkedHashSet<>())
+                      .add(change.requestId()));
+        }
+      }
+    }
+    return stacks;
+  }
+
+  private static StackChanges stack(Map<String, StackChanges> stacks, String code) {
+    return stacks.computeIfAbsent(code.toUpperCase(), k -> new StackChanges());
+  }
+
+  // codes of stacks whose queue changed.
+  public Set<String> affectedStacks() {
+    Set<String> stacks = new LinkedHashSet<>();
+    for (var change : changes) {
+      if (change.fromStack() != null) {
+        stacks.add(change.fromStack());
+      }
+      if (change.toStack() != null) {
+        stacks.add(change.toStack());
+      }
+    }
+    return stacks;
+  }
+}
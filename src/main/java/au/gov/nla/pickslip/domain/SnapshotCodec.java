@@ -0,0 +1,294 @@
+package au.gov.nla.pickslip.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+  Compact binary form of a PickslipQueues snapshot, for saving to local disk and loading at
+  startup - so pages show the last known queues straight away, rather than nothing until FOLIO
+  has been queried.
+
+  Layout: header (magic, format, when saved, snapshot version), a table of every distinct string,
+  then the queues with strings as (varint) references into the table.  Most values repeat
+  (statuses, patron groups, locations, tags), so the table keeps the file small and loading
+  creates one instance of each.
+*/
+public final class SnapshotCodec {
+
+  private static final int MAGIC = 0x50515331; // "PQS1"
+  private static final int FORMAT = 1;
+
+  // pickslip flags
+  private static final int VISITING = 1;
+  private static final int PARKED = 2;
+  private static final int REQUEST_DATE = 4;
+
+  private SnapshotCodec() {}
+
+  public record Saved(PickslipQueues.Snapshot snapshot, Instant savedAt) {}
+
+  public static void write(PickslipQueues.Snapshot snapshot, Instant savedAt, OutputStream out)
+      throws IOException {
+
+    var queues = snapshot.getServicePointPickslips();
+    if (queues == null) {
+      throw new IllegalArgumentException("Snapshot not built yet - nothing to save");
+    }
+
+    // body first, collecting the string table as it goes.
+    var strings = new StringTable();
+    var bodyBytes = new ByteArrayOutputStream(1 << 16);
+    var body = new DataOutputStream(bodyBytes);
+
+    writeVarint(body, snapshot.getServicePointCodes().size());
+    for (var code : snapshot.getServicePointCodes()) {
+      strings.write(body, code);
+    }
+
+    writeVarint(body, queues.size());
+    for (var e : queues.entrySet()) {
+      var sp = e.getKey();
+      strings.write(body, sp.id());
+      strings.write(body, sp.code());
+      strings.write(body, sp.label());
+      writeVarint(body, e.getValue().size());
+      for (var pickslip : e.getValue()) {
+        writePickslip(body, strings, pickslip);
+      }
+    }
+    body.flush();
+
+    var data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeByte(FORMAT);
+    data.writeLong(savedAt.toEpochMilli());
+    data.writeLong(snapshot.getVersion());
+    writeVarint(data, strings.values.size());
+    for (var s : strings.values) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarint(data, bytes.length);
+      data.write(bytes);
+    }
+    bodyBytes.writeTo(data);
+    data.flush();
+  }
+
+  public static Saved read(InputStream in) throws IOException {
+
+    var data = new DataInputStream(in);
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a saved snapshot");
+    }
+    int format = data.readUnsignedByte();
+    if (format != FORMAT) {
+      throw new IOException("Unsupported snapshot format: " + format);
+    }
+    Instant savedAt = Instant.ofEpochMilli(data.readLong());
+    long version = data.readLong();
+
+    String[] strings = new String[readVarint(data)];
+    byte[] buffer = new byte[256];
+    for (int i = 0; i < strings.length; i++) {
+      int length = readVarint(data);
+      if (length > buffer.length) {
+        buffer = new byte[Math.max(length, buffer.length * 2)];
+      }
+      data.readFully(buffer, 0, length);
+      strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    int codeCount = readVarint(data);
+    List<String> servicePointCodes = new ArrayList<>(codeCount);
+    for (int i = 0; i < codeCount; i++) {
+      servicePointCodes.add(string(data, strings));
+    }
+
+    Map<String, ZoneId> zones = new HashMap<>();
+    int queueCount = readVarint(data);
+    Map<PickslipQueues.ServicePoint, List<PickslipQueues.Pickslip>> queues = new HashMap<>();
+    for (int q = 0; q < queueCount; q++) {
+      var sp =
+          new PickslipQueues.ServicePoint(
+              string(data, strings), string(data, strings), string(data, strings));
+      int size = readVarint(data);
+      List<PickslipQueues.Pickslip> queue = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        queue.add(readPickslip(data, strings, zones));
+      }
+      queues.put(sp, queue);
+    }
+
+    return new Saved(new PickslipQueues.Snapshot(version, queues, servicePointCodes), savedAt);
+  }
+
+  private static void writePickslip(
+      DataOutput out, StringTable strings, PickslipQueues.Pickslip pickslip) throws IOException {
+
+    var request = pickslip.request();
+    var requester = request.requester();
+    var item = pickslip.item();
+    var instance = pickslip.instance();
+
+    out.writeByte(
+        (pickslip.visiting() ? VISITING : 0)
+            | (pickslip.parked() ? PARKED : 0)
+            | (request.requestDate() != null ? REQUEST_DATE : 0));
+
+    strings.write(out, request.id());
+    strings.write(out, requester.id());
+    strings.write(out, requester.barcode());
+    strings.write(out, requester.firstName());
+    strings.write(out, requester.lastName());
+    if (request.requestDate() != null) {
+      var instant = request.requestDate().toInstant();
+      out.writeLong(instant.getEpochSecond());
+      writeVarint(out, instant.getNano());
+      strings.write(out, request.requestDate().getZone().getId());
+    }
+    strings.write(out, request.patronComments());
+    strings.write(out, request.patronGroup());
+    strings.write(out, request.status());
+    strings.write(out, request.position());
+    var tags = request.tagList();
+    writeVarint(out, tags == null ? 0 : tags.size() + 1);
+    if (tags != null) {
+      for (var tag : tags) {
+        strings.write(out, tag);
+      }
+    }
+
+    strings.write(out, item.id());
+    strings.write(out, item.title());
+    strings.write(out, item.primaryContributor());
+    strings.write(out, item.allContributors());
+    strings.write(out, item.descriptionOfPieces());
+    strings.write(out, item.barcode());
+    strings.write(out, item.callNumber());
+    strings.write(out, item.chronology());
+    strings.write(out, item.enumeration());
+    strings.write(out, item.effectiveLocationSpecific());
+    strings.write(out, item.yearCaption());
+    strings.write(out, item.copy());
+
+    strings.write(out, instance.id());
+    strings.write(out, instance.title());
+  }
+
+  private static PickslipQueues.Pickslip readPickslip(
+      DataInput in, String[] strings, Map<String, ZoneId> zones) throws IOException {
+
+    int flags = in.readUnsignedByte();
+
+    String id = string(in, strings);
+    var requester =
+        new PickslipQueues.Pickslip.Request.Requester(
+            string(in, strings), string(in, strings), string(in, strings), string(in, strings));
+    ZonedDateTime requestDate = null;
+    if ((flags & REQUEST_DATE) != 0) {
+      var instant = Instant.ofEpochSecond(in.readLong(), readVarint(in));
+      var zone = zones.computeIfAbsent(string(in, strings), ZoneId::of);
+      requestDate = ZonedDateTime.ofInstant(instant, zone);
+    }
+    String patronComments = string(in, strings);
+    String patronGroup = string(in, strings);
+    String status = string(in, strings);
+    String position = string(in, strings);
+    int tagCount = readVarint(in);
+    List<String> tags = null;
+    if (tagCount > 0) {
+      List<String> list = new ArrayList<>(tagCount - 1);
+      for (int i = 1; i < tagCount; i++) {
+        list.add(string(in, strings));
+      }
+      tags = Collections.unmodifiableList(list);
+    }
+    var request =
+        new PickslipQueues.Pickslip.Request(
+            id, requester, requestDate, patronComments, patronGroup, status, position, tags);
+
+    var item =
+        new PickslipQueues.Pickslip.Item(
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings),
+            string(in, strings));
+
+    var instance =
+        new PickslipQueues.Pickslip.Instance(string(in, strings), string(in, strings));
+
+    return new PickslipQueues.Pickslip(
+        (flags & VISITING) != 0, (flags & PARKED) != 0, request, item, instance);
+  }
+
+  // distinct strings in order of first use; references are index + 1 (0 is null).
+  private static final class StringTable {
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    void write(DataOutput out, String s) throws IOException {
+      if (s == null) {
+        writeVarint(out, 0);
+        return;
+      }
+      Integer index = indexes.get(s);
+      if (index == null) {
+        index = values.size();
+        indexes.put(s, index);
+        values.add(s);
+      }
+      writeVarint(out, index + 1);
+    }
+  }
+
+  private static String string(DataInput in, String[] strings) throws IOException {
+    int ref = readVarint(in);
+    if (ref > strings.length) {
+      throw new IOException("Corrupt snapshot: string reference " + ref);
+    }
+    return ref == 0 ? null : strings[ref - 1];
+  }
+
+  // unsigned LEB128.
+  private static void writeVarint(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarint(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Corrupt snapshot: varint too long");
+  }
+}
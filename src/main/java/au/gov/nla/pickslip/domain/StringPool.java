@@ -0,0 +1,93 @@
+package au.gov.nla.pickslip.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Deduplicates the strings which repeat across thousands of records in every refresh (statuses,
+  patron groups, location names and codes, tags..) so the model holds one instance of each,
+  rather than one per record from every fresh parse.
+
+  Generational: rotate() after each refresh starts a new generation, carrying over the instances
+  still in use - strings not seen for a whole refresh are dropped, so the pool doesn't grow
+  without bound.  Only use it for low cardinality values - ids and titles would just fill it.
+*/
+public final class StringPool {
+
+  // identity - for callers which don't pool.
+  public static final StringPool NONE = new StringPool(false);
+
+  private final boolean enabled;
+
+  private volatile ConcurrentHashMap<String, String> current = new ConcurrentHashMap<>();
+  private volatile ConcurrentHashMap<String, String> previous = new ConcurrentHashMap<>();
+
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder deduplicated = new LongAdder();
+  private final LongAdder savedBytes = new LongAdder();
+
+  public StringPool() {
+    this(true);
+  }
+
+  private StringPool(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  // stats for one generation: distinct strings retained (and their approximate heap size), and
+  // duplicates replaced by a pooled instance (and the heap they would have taken).
+  public record Stats(
+      int distinct, long retainedBytes, long lookups, long deduplicated, long savedBytes) {}
+
+  public String intern(String s) {
+    if (s == null || !enabled) {
+      return s;
+    }
+    lookups.increment();
+
+    var generation = this.current;
+    String pooled = generation.get(s);
+    if (pooled == null) {
+      String carried = previous.get(s);
+      String candidate = carried != null ? carried : s;
+      pooled = generation.putIfAbsent(s, candidate);
+      if (pooled == null) {
+        pooled = candidate;
+      }
+    }
+
+    if (pooled != s) {
+      deduplicated.increment();
+      savedBytes.add(sizeOf(s));
+    }
+    return pooled;
+  }
+
+  // start a new generation, returning stats for the one just ended.
+  public synchronized Stats rotate() {
+    var ended = this.current;
+    long retained = 0;
+    for (var s : ended.values()) {
+      retained += sizeOf(s);
+    }
+    var stats =
+        new Stats(
+            ended.size(),
+            retained,
+            lookups.sumThenReset(),
+            deduplicated.sumThenReset(),
+            savedBytes.sumThenReset());
+
+    this.previous = ended;
+    this.current = new ConcurrentHashMap<>();
+    return stats;
+  }
+
+  // approximate heap size of a String and its backing array (64 bit JVM, compressed oops, compact
+  // strings).
+  static long sizeOf(String s) {
+    boolean latin1 = s.chars().allMatch(c -> c <= 0xFF);
+    long array = 16 + (long) s.length() * (latin1 ? 1 : 2);
+    return 24 + ((array + 7) / 8) * 8;
+  }
+}
@@ -0,0 +1,68 @@
+package au.gov.nla.pickslip.service;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  Interval between request retrievals, adapted after each run:
+
+    - something changed: halve the interval (busy periods get sub-minute freshness)
+    - nothing changed, or the run failed: back off by half again (quiet periods, or FOLIO in
+      trouble, mean fewer calls)
+
+  The interval stays within [min, max], and never drops below a multiple of the last run's duration
+  - a slow FOLIO shouldn't have us refreshing back to back.  The delay actually used has random
+  jitter (+/- a fraction of the interval) so instances don't fall into step.
+*/
+final class AdaptiveRefreshInterval {
+
+  // keep refreshing to at most ~1/RUN_DURATION_FACTOR of the time.
+  static final int RUN_DURATION_FACTOR = 4;
+
+  private final Duration min;
+  private final Duration max;
+  private final double jitter;
+
+  private Duration interval;
+
+  AdaptiveRefreshInterval(Duration min, Duration max, double jitter) {
+    if (min.isNegative() || min.isZero() || max.compareTo(min) < 0) {
+      throw new IllegalArgumentException("Invalid refresh interval bounds: " + min + " - " + max);
+    }
+    this.min = min;
+    this.max = max;
+    this.jitter = Math.max(0, Math.min(jitter, 0.5));
+    this.interval = min;
+  }
+
+  // adapt to the outcome of a run, returning the (jittered) delay until the next one.
+  synchronized Duration next(int changes, Duration runDuration, boolean failed) {
+
+    Duration adapted =
+        (changes > 0 && !failed) ? interval.dividedBy(2) : interval.plus(interval.dividedBy(2));
+
+    Duration floor = runDuration.multipliedBy(RUN_DURATION_FACTOR);
+    if (adapted.compareTo(floor) < 0) {
+      adapted = floor;
+    }
+    this.interval = clamp(adapted);
+
+    return withJitter(this.interval);
+  }
+
+  synchronized Duration current() {
+    return interval;
+  }
+
+  private Duration clamp(Duration d) {
+    return d.compareTo(min) < 0 ? min : d.compareTo(max) > 0 ? max : d;
+  }
+
+  private Duration withJitter(Duration d) {
+    if (jitter == 0) {
+      return d;
+    }
+    double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+    return Duration.ofMillis((long) (d.toMillis() * factor));
+  }
+}
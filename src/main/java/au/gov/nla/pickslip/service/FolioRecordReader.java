@@ -0,0 +1,286 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.FolioPickslip;
+import au.gov.nla.pickslip.domain.FolioRequest;
+import au.gov.nla.pickslip.domain.StringPool;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  Token level (streaming) readers for FOLIO request and pickslip payloads.  Records are built
+  directly as the parser moves through the document - fields we don't use (and everything nested
+  under them) are skipped without being materialised, and there's no per field JSON pointer
+  lookup.
+
+  Readers work on any JsonParser: over the raw response stream, or over an already parsed
+  JsonNode (JsonNode.traverse()) which is what the folio-api hands back.
+
+  Values which repeat across records (statuses, locations, patron groups, tags..) go through a
+  StringPool, so records share one instance of each.
+*/
+final class FolioRecordReader {
+
+  private FolioRecordReader() {}
+
+  static List<FolioRequest> readRequests(JsonParser p) throws IOException {
+    return readRequests(p, StringPool.NONE);
+  }
+
+  static List<FolioRequest> readRequests(JsonParser p, StringPool pool) throws IOException {
+    return readArray(p, "requests", r -> readRequest(r, pool), new ArrayList<>());
+  }
+
+  static List<FolioPickslip> readPickslips(JsonParser p) throws IOException {
+    return readPickslips(p, StringPool.NONE);
+  }
+
+  static List<FolioPickslip> readPickslips(JsonParser p, StringPool pool) throws IOException {
+    return readArray(p, "pickslips", r -> readPickslip(r, pool), new ArrayList<>());
+  }
+
+  interface RecordReader<T> {
+    // called with the parser on the record's START_OBJECT; must consume through END_OBJECT.
+    T read(JsonParser p) throws IOException;
+  }
+
+  // read the records in the named array field of the top level object into result, skipping all
+  // other fields.
+  static <T> List<T> readArray(
+      JsonParser p, String arrayField, RecordReader<T> reader, List<T> result)
+      throws IOException {
+
+    if (p.currentToken() == null) {
+      p.nextToken();
+    }
+    if (!isObject(p)) {
+      return result;
+    }
+
+    for (String field; (field = nextField(p)) != null; ) {
+      if (arrayField.equals(field) && p.currentToken() == JsonToken.START_ARRAY) {
+        for (JsonToken t; (t = p.nextToken()) != JsonToken.END_ARRAY; ) {
+          if (t == JsonToken.START_OBJECT) {
+            result.add(reader.read(p));
+          } else {
+            p.skipChildren();
+          }
+        }
+      } else {
+        p.skipChildren();
+      }
+    }
+    return result;
+  }
+
+  static FolioRequest readRequest(JsonParser p, StringPool pool) throws IOException {
+
+    String id = null, requestDate = null, patronComments = null, itemId = null;
+    String instanceId = null, requesterId = null, status = null;
+    String cancellationAdditionalInformation = null, position = null;
+    String instanceTitle = null;
+    String itemBarcode = null, itemCallNumber = null, locationName = null, locationCode = null;
+    String requesterBarcode = null, patronGroupGroup = null;
+    List<String> tagList = new ArrayList<>();
+
+    for (String field; (field = nextField(p)) != null; ) {
+      switch (field) {
+        case "id" -> id = text(p);
+        case "requestDate" -> requestDate = text(p);
+        case "patronComments" -> patronComments = text(p);
+        case "itemId" -> itemId = text(p);
+        case "instanceId" -> instanceId = text(p);
+        case "requesterId" -> requesterId = text(p);
+        case "status" -> status = pool.intern(text(p));
+        // free text (like patronComments) - nearly unique, so not pooled.
+        case "cancellationAdditionalInformation" -> cancellationAdditionalInformation = text(p);
+        case "position" -> position = pool.intern(text(p));
+        case "instance" -> {
+          if (isObject(p)) {
+            for (String f; (f = nextField(p)) != null; ) {
+              if ("title".equals(f)) {
+                instanceTitle = text(p);
+              } else {
+                p.skipChildren();
+              }
+            }
+          }
+        }
+        case "item" -> {
+          if (isObject(p)) {
+            for (String f; (f = nextField(p)) != null; ) {
+              switch (f) {
+                case "barcode" -> itemBarcode = text(p);
+                case "callNumber" -> itemCallNumber = text(p);
+                case "location" -> {
+                  if (isObject(p)) {
+                    for (String lf; (lf = nextField(p)) != null; ) {
+                      switch (lf) {
+                        case "name" -> locationName = pool.intern(text(p));
+                        case "code" -> locationCode = pool.intern(text(p));
+                        default -> p.skipChildren();
+                      }
+                    }
+                  }
+                }
+                default -> p.skipChildren();
+              }
+            }
+          }
+        }
+        case "requester" -> {
+          if (isObject(p)) {
+            for (String f; (f = nextField(p)) != null; ) {
+              switch (f) {
+                case "barcode" -> requesterBarcode = text(p);
+                case "patronGroupGroup" -> patronGroupGroup = pool.intern(text(p));
+                default -> p.skipChildren();
+              }
+            }
+          }
+        }
+        case "tagList" -> {
+          if (p.currentToken() == JsonToken.START_ARRAY) {
+            for (JsonToken t; (t = p.nextToken()) != JsonToken.END_ARRAY; ) {
+              if (t.isScalarValue()) {
+                tagList.add(pool.intern(p.getText()));
+              } else {
+                p.skipChildren();
+              }
+            }
+          }
+        }
+        default -> p.skipChildren();
+      }
+    }
+
+    return new FolioRequest(
+        id,
+        toLocalDateTime(requestDate),
+        patronComments,
+        itemId,
+        instanceId,
+        requesterId,
+        status,
+        cancellationAdditionalInformation,
+        position,
+        new FolioRequest.Instance(instanceTitle),
+        new FolioRequest.Item(
+            itemBarcode,
+            itemCallNumber,
+            new FolioRequest.Item.Location(locationName, locationCode)),
+        new FolioRequest.Requester(requesterBarcode, patronGroupGroup),
+        tagList);
+  }
+
+  static FolioPickslip readPickslip(JsonParser p, StringPool pool) throws IOException {
+
+    String requestId = "";
+    String title = null, primaryContributor = null, allContributors = null, barcode = null;
+    String descriptionOfPieces = null, callNumber = null, chronology = null, enumeration = null;
+    String effectiveLocationSpecific = null, yearCaption = null, copy = null;
+    String firstName = null, lastName = null, requesterBarcode = null;
+
+    for (String field; (field = nextField(p)) != null; ) {
+      switch (field) {
+        case "requestId" -> requestId = p.getText();
+        case "item" -> {
+          if (isObject(p)) {
+            for (String f; (f = nextField(p)) != null; ) {
+              switch (f) {
+                case "title" -> title = text(p);
+                case "primaryContributor" -> primaryContributor = text(p);
+                case "allContributors" -> allContributors = text(p);
+                case "barcode" -> barcode = text(p);
+                case "descriptionOfPieces" -> descriptionOfPieces = text(p);
+                case "callNumber" -> callNumber = text(p);
+                case "chronology" -> chronology = pool.intern(text(p));
+                case "enumeration" -> enumeration = pool.intern(text(p));
+                case "effectiveLocationSpecific" ->
+                    effectiveLocationSpecific = pool.intern(text(p));
+                case "yearCaption" -> yearCaption = pool.intern(text(p));
+                case "copy" -> copy = pool.intern(text(p));
+                default -> p.skipChildren();
+              }
+            }
+          }
+        }
+        case "requester" -> {
+          if (isObject(p)) {
+            for (String f; (f = nextField(p)) != null; ) {
+              switch (f) {
+                case "firstName" -> firstName = text(p);
+                case "lastName" -> lastName = text(p);
+                case "barcode" -> requesterBarcode = text(p);
+                default -> p.skipChildren();
+              }
+            }
+          }
+        }
+        default -> p.skipChildren();
+      }
+    }
+
+    return new FolioPickslip(
+        requestId,
+        new FolioPickslip.Item(
+            title,
+            primaryContributor,
+            allContributors,
+            barcode,
+            descriptionOfPieces,
+            callNumber,
+            chronology,
+            enumeration,
+            effectiveLocationSpecific,
+            yearCaption,
+            copy),
+        new FolioPickslip.Requester(firstName, lastName, requesterBarcode));
+  }
+
+  // FOLIO dates are ISO offset date times (UTC) - displayed in local time.
+  static ZonedDateTime toLocalDateTime(String isoOffsetDateTime) {
+    return isoOffsetDateTime == null
+        ? null
+        : ZonedDateTime.parse(isoOffsetDateTime, DateTimeFormatter.ISO_OFFSET_DATE_TIME)
+            .withZoneSameInstant(ZoneId.systemDefault());
+  }
+
+  // advance to the next field of the current object, leaving the parser on its value.  Returns
+  // the field name, or null at the end of the object.
+  private static String nextField(JsonParser p) throws IOException {
+    if (p.nextToken() != JsonToken.FIELD_NAME) {
+      return null;
+    }
+    String name = p.currentName();
+    p.nextToken();
+    return name;
+  }
+
+  // true if the parser is on the start of an object.  Anything else (null, arrays) is skipped.
+  private static boolean isObject(JsonParser p) throws IOException {
+    if (p.currentToken() == JsonToken.START_OBJECT) {
+      return true;
+    }
+    p.skipChildren();
+    return false;
+  }
+
+  // scalar value as text (numbers included), or null for JSON null and structured values.
+  private static String text(JsonParser p) throws IOException {
+    JsonToken t = p.currentToken();
+    if (t == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (t.isStructStart()) {
+      p.skipChildren();
+      return null;
+    }
+    return p.getText();
+  }
+}
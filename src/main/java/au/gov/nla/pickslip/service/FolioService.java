@@ -15,8 +15,10 @@ import au.gov.nla.pickslip.domain.FolioPickslip;
 import au.gov.nla.pickslip.domain.FolioRequest;
 import au.gov.nla.pickslip.domain.FolioServicePoint;
 import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.StringPool;
 import au.gov.nla.pickslip.dto.RequestNoteDto;
 import au.gov.nla.pickslip.service.async.FolioAsyncService;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -25,19 +27,27 @@ import org.apache.logging.log4j.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
@@ -49,6 +59,15 @@ public class FolioService {
   @Value("${folio.pickslips.limit}")
   private int folioPickslipsLimit;
 
+  @Value("${folio.requests.incremental:true}")
+  private boolean folioRequestsIncremental;
+
+  @Value("${folio.requests.full-resync-minutes:30}")
+  private int folioRequestsFullResyncMinutes;
+
+  @Value("${folio.requests.incremental-overlap-seconds:60}")
+  private int folioRequestsIncrementalOverlapSeconds;
+
   // delegate all async
   @Autowired
   FolioAsyncService folioAsyncService;
@@ -56,10 +75,28 @@ public class FolioService {
   @Autowired
   FolioConfiguration folioConfiguration;
 
+  @Autowired
+  @Qualifier("folioAsyncExecutor")
+  Executor folioAsyncExecutor;
+
   private FOLIOAPICredentials folioApiCredentials;
 
   private final Logger log = LoggerFactory.getLogger(this.getClass());
 
+  // incremental request sync state: open requests by id as of the last sync, when that sync
+  // started (the watermark for the next delta query), and when the last full sync started.
+  private final Map<String, FolioRequest> syncedRequests = new LinkedHashMap<>();
+  private Instant syncWatermark;
+  private Instant lastFullSync;
+  private List<FolioRequest> syncedRequestsList;
+
+  // last parsed payload per source (e.g. "requests", "pickslips:<service point id>"), by fingerprint.
+  private final Map<String, ParsedPayload<?>> lastPayloads = new ConcurrentHashMap<>();
+  private final AtomicLong unchangedPayloads = new AtomicLong();
+
+  // shared by the model's requests and pickslips - see StringPool.
+  private final StringPool stringPool = new StringPool();
+
   @PostConstruct
   public void init() {
     folioApiCredentials = FOLIOAPIUtils.toFOLIOAPICredentials(Map.of("FOLIO_TENANT", folioConfiguration.getTenant(),
@@ -145,146 +182,297 @@ public class FolioService {
   public Map<FolioServicePoint, List<FolioPickslip>> getPickslipsForServicePoints(
       List<FolioServicePoint> servicePoints) throws IOException {
 
-    Map<FolioServicePoint, List<FolioPickslip>> result = new HashMap<>();
-    for (var sp : servicePoints) {
-      var pickslips = getPickslipsForServicePoint(sp.id());
+    return join(getPickslipsForServicePointsAsync(servicePoints));
+  }
+
+  // join an async FOLIO call, rethrowing any IOException it failed with.
+  static <T> T join(CompletableFuture<T> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException ce) {
+      if (ce.getCause() instanceof UncheckedIOException uioe) {
+        throw uioe.getCause();
+      }
+      throw ce;
+    }
+  }
 
-      log.debug(
-          "{} pickslips retrieved for {}", pickslips == null ? 0 : pickslips.size(), sp.code());
+  // fan out one pickslip call per service point on the async executor.  Concurrency is bounded by
+  // the executor pool size (folio.async.concurrency); the result completes when every call has.
+  public CompletableFuture<Map<FolioServicePoint, List<FolioPickslip>>>
+      getPickslipsForServicePointsAsync(List<FolioServicePoint> servicePoints) {
 
-      result.put(sp, pickslips);
+    Map<FolioServicePoint, CompletableFuture<List<FolioPickslip>>> futures = new LinkedHashMap<>();
+    for (var sp : servicePoints) {
+      long start = System.nanoTime();
+      futures.put(
+          sp,
+          getPickslipsForServicePointAsync(sp.id())
+              .whenComplete(
+                  (pickslips, t) ->
+                      log.debug(
+                          "{} pickslips retrieved for {} in {} ms",
+                          pickslips == null ? 0 : pickslips.size(),
+                          sp.code(),
+                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))));
     }
 
-    return result;
+    return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+        .thenApply(
+            v -> {
+              // pickslips may be null for a service point - HashMap allows that.
+              Map<FolioServicePoint, List<FolioPickslip>> result = new HashMap<>();
+              futures.forEach((sp, f) -> result.put(sp, f.join()));
+              return result;
+            });
   }
 
   public List<FolioPickslip> getPickslipsForServicePoint(String id) throws IOException {
-
     JsonNode n = folioApiGetPickslipsForServicePoint(id, folioPickslipsLimit);
+    try {
+      return join(pickslipsFromFirstPage(id, n));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  public CompletableFuture<List<FolioPickslip>> getPickslipsForServicePointAsync(String id) {
+    return CompletableFuture.supplyAsync(
+            () -> unchecked(() -> folioApiGetPickslipsForServicePoint(id, folioPickslipsLimit)),
+            folioAsyncExecutor)
+        .thenCompose(n -> pickslipsFromFirstPage(id, n));
+  }
+
+  private CompletableFuture<List<FolioPickslip>> pickslipsFromFirstPage(String id, JsonNode n) {
 
     if (n == null) {
       log.debug("No pickslips for {}", id);
-      return null;
+      return CompletableFuture.completedFuture(null);
     }
 
-    ArrayList<FolioPickslip> result = new ArrayList<>();
+    return readAllPages(
+        "pickslips:" + id,
+        "pickslips",
+        n,
+        (offset, limit) -> folioApiGetPickslipsForServicePoint(id, offset, limit),
+        p -> FolioRecordReader.readPickslips(p, stringPool));
+  }
 
-    n.at("/pickslips")
-        .forEach(
-            r -> {
-              FolioPickslip pick =
-                  new FolioPickslip(
-                      r.at("/requestId")
-                          .asText(),
-                      new FolioPickslip.Item(
-                          r.at("/item/title")
-                              .asText(null),
-                          r.at("/item/primaryContributor")
-                              .asText(null),
-                          r.at("/item/allContributors")
-                              .asText(null),
-                          r.at("/item/barcode")
-                              .asText(null),
-                          r.at("/item/descriptionOfPieces")
-                              .asText(null),
-                          r.at("/item/callNumber")
-                              .asText(null),
-                          r.at("/item/chronology")
-                              .asText(null),
-                          r.at("/item/enumeration")
-                              .asText(null),
-                          r.at("/item/effectiveLocationSpecific")
-                              .asText(null),
-                          r.at("/item/yearCaption")
-                              .asText(null),
-                          r.at("/item/copy")
-                              .asText(null)),
-                      new FolioPickslip.Requester(
-                          r.at("/requester/firstName")
-                              .asText(null),
-                          r.at("/requester/lastName")
-                              .asText(null),
-                          r.at("/requester/barcode")
-                              .asText(null)));
-
-              result.add(pick);
-            });
+  public List<FolioRequest> getFolioRequests() throws IOException {
+    JsonNode n = folioApiGetRequests();
+    try {
+      return join(requestsFromFirstPage(n));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
 
-    return result;
+  public CompletableFuture<List<FolioRequest>> getFolioRequestsAsync() {
+    return CompletableFuture.supplyAsync(() -> unchecked(this::folioApiGetRequests), folioAsyncExecutor)
+        .thenCompose(this::requestsFromFirstPage);
   }
 
-  private List<String> toList(Iterator<JsonNode> n) {
-    ArrayList<String> result = new ArrayList<>();
-    n.forEachRemaining(s -> result.add(s.asText()));
-    return result;
+  private CompletableFuture<List<FolioRequest>> requestsFromFirstPage(JsonNode n) {
+
+    if (n == null) {
+      return CompletableFuture.completedFuture(new ArrayList<>());
+    }
+
+    return readAllPages(
+        "requests",
+        "requests",
+        n,
+        this::folioApiGetRequests,
+        p -> FolioRecordReader.readRequests(p, stringPool));
   }
 
-  public List<FolioRequest> getFolioRequests() throws IOException {
+  // open requests, either re-downloaded in full or, between full resyncs, brought up to date by
+  // applying only those requests updated since the last sync (folio.requests.incremental).  The
+  // full resync (every folio.requests.full-resync-minutes) catches deletions and any drift.
+  public CompletableFuture<List<FolioRequest>> syncFolioRequestsAsync() {
+
+    Instant started = Instant.now();
+    boolean full;
+    Instant since;
+
+    synchronized (this) {
+      full =
+          !folioRequestsIncremental
+              || syncWatermark == null
+              || lastFullSync == null
+              || started.isAfter(lastFullSync.plus(Duration.ofMinutes(folioRequestsFullResyncMinutes)));
+      since = full ? null : syncWatermark.minusSeconds(folioRequestsIncrementalOverlapSeconds);
+    }
 
-    JsonNode n = folioApiGetRequests();
+    if (full) {
+      return getFolioRequestsAsync().thenApply(requests -> replaceSyncedRequests(started, requests));
+    }
+
+    String sinceDate = DateTimeFormatter.ISO_INSTANT.format(since);
+    return CompletableFuture.supplyAsync(
+            () -> unchecked(() -> folioApiGetRequestsUpdatedSince(sinceDate, 0, folioRequestsLimit)),
+            folioAsyncExecutor)
+        .thenCompose(
+            n ->
+                n == null
+                    ? CompletableFuture.completedFuture(new ArrayList<FolioRequest>())
+                    : readAllPages(
+                        "requests-updated",
+                        "requests",
+                        n,
+                        (offset, limit) -> folioApiGetRequestsUpdatedSince(sinceDate, offset, limit),
+                        p -> FolioRecordReader.readRequests(p, stringPool)))
+        .thenApply(changed -> applyRequestChanges(started, changed));
+  }
+
+  private synchronized List<FolioRequest> replaceSyncedRequests(
+      Instant started, List<FolioRequest> requests) {
 
-    ArrayList<FolioRequest> result = new ArrayList<>();
-
-    if (n != null) {
-      n.at("/requests")
-          .forEach(
-              r -> {
-                var requestDateNode = r.at("/requestDate");
-
-                ZonedDateTime requestDate =
-                    requestDateNode.isNull()
-                        ? null
-                        : ZonedDateTime.parse(
-                        requestDateNode.asText(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-
-                ZonedDateTime localRequestDate =
-                    requestDate.withZoneSameInstant(ZoneId.systemDefault());
-
-                FolioRequest req =
-                    new FolioRequest(
-                        r.at("/id")
-                            .asText(null),
-                        localRequestDate,
-                        r.at("/patronComments")
-                            .asText(null),
-                        r.at("/itemId")
-                            .asText(null),
-                        r.at("/instanceId")
-                            .asText(null),
-                        r.at("/requesterId")
-                            .asText(null),
-                        r.at("/status")
-                            .asText(null),
-                        r.at("/cancellationAdditionalInformation")
-                            .asText(null),
-                        r.at("/position")
-                            .asText(null),
-                        new FolioRequest.Instance(r.at("/instance/title")
-                            .asText(null)),
-                        new FolioRequest.Item(
-                            r.at("/item/barcode")
-                                .asText(null),
-                            r.at("/item/callNumber")
-                                .asText(null),
-                            new FolioRequest.Item.Location(
-                                r.at("/item/location/name")
-                                    .asText(null),
-                                r.at("/item/location/code")
-                                    .asText(null))),
-                        new FolioRequest.Requester(
-                            r.at("/requester/barcode")
-                                .asText(null),
-                            r.at("/requester/patronGroupGroup")
-                                .asText(null)),
-                        toList(r.at("/tagList")
-                            .elements()));
-
-                result.add(req);
-              });
+    Map<String, FolioRequest> latest = new LinkedHashMap<>();
+    requests.forEach(r -> latest.put(r.id(), r));
+
+    boolean changed = !latest.equals(syncedRequests);
+    if (changed) {
+      syncedRequests.clear();
+      syncedRequests.putAll(latest);
     }
+    syncWatermark = started;
+    lastFullSync = started;
 
-    return result;
+    log.debug("Full request sync: {} open requests (changed: {})", syncedRequests.size(), changed);
+    return syncedRequestsList(changed);
   }
+
+  // changes include requests which are no longer open (filled, cancelled..) - these drop out.
+  private synchronized List<FolioRequest> applyRequestChanges(
+      Instant started, List<FolioRequest> changes) {
+
+    boolean changed = false;
+    for (var r : changes) {
+      if (isOpenRequestStatus(r.status())) {
+        changed |= !r.equals(syncedRequests.put(r.id(), r));
+      } else {
+        changed |= syncedRequests.remove(r.id()) != null;
+      }
+    }
+    syncWatermark = started;
+
+    log.debug(
+        "Incremental request sync: {} updated, {} open requests (changed: {})",
+        changes.size(),
+        syncedRequests.size(),
+        changed);
+    return syncedRequestsList(changed);
+  }
+
+  // the same list instance is handed out until the synced requests change.
+  private List<FolioRequest> syncedRequestsList(boolean changed) {
+    if (changed || syncedRequestsList == null) {
+      syncedRequestsList = List.copyOf(syncedRequests.values());
+    }
+    return syncedRequestsList;
+  }
+
+  private static boolean isOpenRequestStatus(String status) {
+    for (var s : PickslipQueues.Pickslip.Request.Status.values()) {
+      if (s.getCode().equalsIgnoreCase(status)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private interface PageFetcher {
+    JsonNode fetch(int offset, int limit) throws IOException;
+  }
+
+  private interface RecordsReader<T> {
+    List<T> read(JsonParser p) throws IOException;
+  }
+
+  private record ParsedPayload<T>(long fingerprint, List<T> records) {}
+
+  // given the first page of a FOLIO result, fetch any remaining pages (if totalRecords says the
+  // first page was truncated) concurrently, then read records from all pages in offset order.  The
+  // size of the first page is used as the page size, in case FOLIO capped the requested limit.
+  private <T> CompletableFuture<List<T>> readAllPages(
+      String source,
+      String arrayField,
+      JsonNode firstPage,
+      PageFetcher pageFetcher,
+      RecordsReader<T> recordsReader) {
+
+    int pageSize = firstPage.path(arrayField).size();
+    int total = firstPage.path("totalRecords").asInt(pageSize);
+
+    List<CompletableFuture<JsonNode>> pages = new ArrayList<>();
+    pages.add(CompletableFuture.completedFuture(firstPage));
+
+    if (total > pageSize && pageSize > 0) {
+      log.debug("{}: {} of {} records in first page, fetching remainder", source, pageSize, total);
+
+      for (int offset = pageSize; offset < total; offset += pageSize) {
+        int pageOffset = offset;
+        pages.add(
+            CompletableFuture.supplyAsync(
+                () -> unchecked(() -> pageFetcher.fetch(pageOffset, pageSize)), folioAsyncExecutor));
+      }
+    }
+
+    return CompletableFuture.allOf(pages.toArray(new CompletableFuture[0]))
+        .thenApply(
+            v -> readPages(source, pages.stream().map(CompletableFuture::join).toList(), recordsReader));
+  }
+
+  // read records from payload pages - unless they're identical to the last payload from the same
+  // source, in which case parsing is skipped and the previous records (the same list instance) are
+  // returned.  Downstream, an unchanged instance means nothing to rebuild.
+  @SuppressWarnings("unchecked")
+  private <T> List<T> readPages(String source, List<JsonNode> pages, RecordsReader<T> recordsReader) {
+
+    long fingerprint = PayloadFingerprint.of(pages);
+
+    var last = (ParsedPayload<T>) lastPayloads.get(source);
+    if (last != null && last.fingerprint() == fingerprint) {
+      unchangedPayloads.incrementAndGet();
+      log.debug("{}: payload unchanged", source);
+      return last.records();
+    }
+
+    List<T> records = new ArrayList<>();
+    for (var page : pages) {
+      if (page != null) {
+        records.addAll(unchecked(() -> recordsReader.read(page.traverse())));
+      }
+    }
+    records = Collections.unmodifiableList(records);
+
+    lastPayloads.put(source, new ParsedPayload<>(fingerprint, records));
+    return records;
+  }
+
+  // end the string pool's current generation (after each refresh), returning its stats.
+  public StringPool.Stats rotateStringPool() {
+    return stringPool.rotate();
+  }
+
+  // number of retrieved payloads found identical to the previous one from the same source.
+  public long getUnchangedPayloadCount() {
+    return unchangedPayloads.get();
+  }
+
+  private interface FolioCall<T> {
+    T call() throws IOException;
+  }
+
+  private static <T> T unchecked(FolioCall<T> call) {
+    try {
+      return call.call();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   // for spy / mock accessibility:
 
   protected JsonNode folioApiGetServicePoints() throws IOException {
@@ -297,72 +485,43 @@ public class FolioService {
 
   protected JsonNode folioApiGetPickslipsForServicePoint(String id, int folioPickslipsLimit)
       throws IOException {
+    return folioApiGetPickslipsForServicePoint(id, 0, folioPickslipsLimit);
+  }
+
+  protected JsonNode folioApiGetPickslipsForServicePoint(String id, int offset, int limit)
+      throws IOException {
     return new FOLIOPickslipsRetrieverAPI(folioApiCredentials)
-        .getPickslipsForServicePoint(id, folioPickslipsLimit);
+        .getPickslipsForServicePoint(id, limit, offset);
   }
 
   protected JsonNode folioApiGetRequests() throws IOException {
+    return folioApiGetRequests(0, folioRequestsLimit);
+  }
+
+  protected JsonNode folioApiGetRequests(int offset, int limit) throws IOException {
     return new FOLIORequestsRetrieverAPI(folioApiCredentials)
         .getRequestsByStatus(
             List.of(
                 PickslipQueues.Pickslip.Request.Status.OPEN_NOT_YET_FILLED.getCode(),
                 PickslipQueues.Pickslip.Request.Status.OPEN_IN_TRANSIT.getCode()),
-            folioRequestsLimit);
+            limit,
+            offset);
+  }
+
+  // requests in any status updated after the given (ISO instant) date.
+  protected JsonNode folioApiGetRequestsUpdatedSince(String since, int offset, int limit)
+      throws IOException {
+    return new FOLIORequestsRetrieverAPI(folioApiCredentials)
+        .getRequests("metadata.updatedDate>\"" + since + "\"", limit, offset);
   }
 
   public FolioRequest folioApiGetRequestById(final String requestId) throws IOException {
     JsonNode folioRequestJson =
         new FOLIORequestsRetrieverAPI(folioApiCredentials).getRequestById(requestId);
 
-    JsonNode requestDateNode = folioRequestJson.at("/requestDate");
-    ZonedDateTime requestDate =
-        requestDateNode.isNull()
-            ? null
-            : ZonedDateTime.parse(
-            requestDateNode.asText(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-
-    assert requestDate != null;
-    ZonedDateTime localRequestDate =
-        requestDate.withZoneSameInstant(ZoneId.systemDefault());
-
-    return
-        new FolioRequest(
-            folioRequestJson.at("/id")
-                .asText(null),
-            localRequestDate,
-            folioRequestJson.at("/patronComments")
-                .asText(null),
-            folioRequestJson.at("/itemId")
-                .asText(null),
-            folioRequestJson.at("/instanceId")
-                .asText(null),
-            folioRequestJson.at("/requesterId")
-                .asText(null),
-            folioRequestJson.at("/status")
-                .asText(null),
-            folioRequestJson.at("/cancellationAdditionalInformation")
-                .asText(null),
-            folioRequestJson.at("/position")
-                .asText(null),
-            new FolioRequest.Instance(folioRequestJson.at("/instance/title")
-                .asText(null)),
-            new FolioRequest.Item(
-                folioRequestJson.at("/item/barcode")
-                    .asText(null),
-                folioRequestJson.at("/item/callNumber")
-                    .asText(null),
-                new FolioRequest.Item.Location(
-                    folioRequestJson.at("/item/location/name")
-                        .asText(null),
-                    folioRequestJson.at("/item/location/code")
-                        .asText(null))),
-            new FolioRequest.Requester(
-                folioRequestJson.at("/requester/barcode")
-                    .asText(null),
-                folioRequestJson.at("/requester/patronGroupGroup")
-                    .asText(null)),
-            toList(folioRequestJson.at("/tagList")
-                .elements()));
+    JsonParser p = folioRequestJson.traverse();
+    p.nextToken();
+    return FolioRecordReader.readRequest(p, StringPool.NONE);
   }
 
   public void updateRequest(final RequestNoteDto requestNoteDto) throws IOException {
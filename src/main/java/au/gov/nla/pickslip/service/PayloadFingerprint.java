@@ -0,0 +1,53 @@
+package au.gov.nla.pickslip.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/*
+  Cheap 64 bit (FNV-1a) fingerprint of FOLIO payload pages, used to tell whether a retrieval
+  returned exactly what the previous one did.  Hashes token types plus field names and scalar
+  text as the payload is streamed - nothing is materialised.
+
+  Not a cryptographic hash; a collision would only mean one refresh is skipped.
+*/
+final class PayloadFingerprint {
+
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  private PayloadFingerprint() {}
+
+  static long of(List<JsonNode> pages) {
+    long hash = OFFSET_BASIS;
+    try {
+      for (var page : pages) {
+        hash = mix(hash, page == null ? -1 : 0); // page boundary
+        if (page != null) {
+          try (JsonParser p = page.traverse()) {
+            for (JsonToken t; (t = p.nextToken()) != null; ) {
+              hash = mix(hash, t.ordinal());
+              if (t == JsonToken.FIELD_NAME || t.isScalarValue()) {
+                char[] text = p.getTextCharacters();
+                int offset = p.getTextOffset();
+                for (int i = offset, end = offset + p.getTextLength(); i < end; i++) {
+                  hash = mix(hash, text[i]);
+                }
+              }
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, int value) {
+    return (hash ^ value) * PRIME;
+  }
+}
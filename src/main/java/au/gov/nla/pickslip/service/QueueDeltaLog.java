@@ -0,0 +1,76 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.QueueDelta;
+import jakarta.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/*
+  The most recent changes to the model (a bounded ring buffer of QueueDeltas), so polling clients
+  can fetch just what changed since the version they last saw (see QueueApiController).
+
+  Every version is published with its changes, so the deltas held chain from one version to the
+  next.  Changes before the oldest delta held are unknown - as are those of a new version until
+  its delta arrives here, which is after the new snapshot is visible.
+*/
+@Service
+public class QueueDeltaLog {
+
+  @Value("${api.delta-history}")
+  int capacity;
+
+  private RingBuffer<QueueDelta> deltas;
+
+  // lower case ids of requests added, removed or changed in each stack's queue and among its
+  // visitors, by upper case stack code.
+  public record Changes(Map<String, Set<String>> queues, Map<String, Set<String>> visitors) {}
+
+  @PostConstruct
+  void init() {
+    this.deltas = new RingBuffer<>(capacity);
+  }
+
+  @EventListener
+  public void onQueueChange(QueueDelta delta) {
+    deltas.add(delta);
+  }
+
+  // changes after version up to current.  Null if they're not all known (too old, from before a
+  // restart, or current's delta hasn't arrived yet) - the client needs everything.
+  public Changes changedSince(long version, long current) {
+
+    Map<String, Set<String>> queues = new HashMap<>();
+    Map<String, Set<String>> visitors = new HashMap<>();
+    long reached = version;
+    for (var delta : deltas.toList()) {
+      if (delta.toVersion() <= version || reached == current) {
+        continue;
+      }
+      if (delta.fromVersion() != reached) {
+        return null;
+      }
+      delta
+          .queueChangesByStack()
+          .forEach(
+              (code, stack) -> {
+                for (var ids : List.of(stack.added(), stack.removed(), stack.changed())) {
+                  add(queues, code, ids);
+                }
+              });
+      delta.visitorChangesByStack().forEach((code, ids) -> add(visitors, code, ids));
+      reached = delta.toVersion();
+    }
+    return reached == current ? new Changes(queues, visitors) : null;
+  }
+
+  private static void add(Map<String, Set<String>> changed, String code, Set<String> ids) {
+    var stackIds = changed.computeIfAbsent(code, k -> new LinkedHashSet<>());
+    ids.forEach(id -> stackIds.add(id.toLowerCase()));
+  }
+}
@@ -0,0 +1,97 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.QueueDelta;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/*
+  Pushes queue changes to open pages as server-sent events, so they can replace just the rows of
+  the stacks which changed (see js/queue-events.js) instead of reloading the whole page on a timer.
+
+  Events:
+    "version" - on connecting: the current model version, so a page can tell if it missed changes.
+    "queues"  - after each refresh which changed the model: request ids added, removed and changed
+                by stack.
+  Plus a comment every events.heartbeat-seconds, so idle connections aren't dropped by proxies.
+*/
+@Service
+public class QueueEventService {
+
+  @Value("${events.timeout-minutes}")
+  long timeoutMinutes;
+
+  @Autowired PickslipQueues pickslipQueues;
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private final Set<SseEmitter> emitters = ConcurrentHashMap.newKeySet();
+
+  public record QueueChanges(
+      long fromVersion, long toVersion, Map<String, QueueDelta.StackChanges> stacks) {}
+
+  // a new subscriber.  Emitters time out (the browser reconnects), so none outlive a lost client
+  // for long.
+  public SseEmitter subscribe() {
+    var emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+    emitter.onCompletion(() -> emitters.remove(emitter));
+    emitter.onTimeout(() -> emitters.remove(emitter));
+    emitter.onError(t -> emitters.remove(emitter));
+    emitters.add(emitter);
+    send(
+        emitter,
+        SseEmitter.event().name("version").data(pickslipQueues.snapshot().getVersion()));
+    return emitter;
+  }
+
+  @EventListener
+  public void onQueueChange(QueueDelta delta) {
+    if (emitters.isEmpty()) {
+      return;
+    }
+    var changes = new QueueChanges(delta.fromVersion(), delta.toVersion(), delta.byStack());
+    log.debug("Sending changes to {} stacks to {} subscribers",
+        changes.stacks().size(), emitters.size());
+    for (var emitter : emitters) {
+      send(
+          emitter,
+          SseEmitter.event()
+              .name("queues")
+              .id(Long.toString(delta.toVersion()))
+              .data(changes, MediaType.APPLICATION_JSON));
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${events.heartbeat-seconds}", timeUnit = TimeUnit.SECONDS)
+  public void heartbeat() {
+    for (var emitter : emitters) {
+      send(emitter, SseEmitter.event().comment("heartbeat"));
+    }
+  }
+
+  public int getSubscriberCount() {
+    return emitters.size();
+  }
+
+  // a failed send means the client has gone - drop it.
+  private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+    try {
+      emitter.send(event);
+    } catch (IOException | IllegalStateException e) {
+      emitters.remove(emitter);
+      emitter.completeWithError(e);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.QueueDelta;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/*
+  Recent history of the queues, in memory: each stack's depth (by status) sampled at every
+  refresh, and how long requests waited before retrieval - from "Open - Not yet filled" to
+  "Open - In transit" - observed in the changes between refreshes.  Both are bounded ring
+  buffers, so only the most recent samples are kept.
+
+  Waits are measured to the refresh which saw the change, so are accurate to the refresh interval.
+*/
+@Service
+public class QueueMetricsService {
+
+  @Value("${metrics.depth-samples}")
+  int depthSamples;
+
+  @Value("${metrics.retrieval-samples}")
+  int retrievalSamples;
+
+  @Autowired StackLocations stackLocations;
+
+  // queue depth of every stack at one refresh, by upper case stack code.
+  public record DepthSample(
+      LocalDateTime time, long version, Map<String, PickslipQueues.StackSummary> stacks) {}
+
+  // time to retrieval percentiles (nearest rank) for a stack, over its most recent retrievals.
+  public record RetrievalTimes(
+      String code, int count, long p50Seconds, long p90Seconds, long p99Seconds, long maxSeconds) {}
+
+  private RingBuffer<DepthSample> depthHistory;
+
+  private final Map<String, RingBuffer<Duration>> retrievalTimes = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  void init() {
+    this.depthHistory = new RingBuffer<>(depthSamples);
+  }
+
+  // summaries are shared with the snapshot - a sample of an unchanged model costs next to nothing.
+  public void sample(PickslipQueues.Snapshot snapshot, LocalDateTime time) {
+    Map<String, PickslipQueues.StackSummary> stacks = new HashMap<>();
+    for (var stack : stackLocations.getStacks()) {
+      stacks.put(stack.code().toUpperCase(), snapshot.getSummaryForStack(stack.code()));
+    }
+    depthHistory.add(new DepthSample(time, snapshot.getVersion(), Map.copyOf(stacks)));
+  }
+
+  @EventListener
+  public void onQueueChange(QueueDelta delta) {
+    recordRetrievals(delta, ZonedDateTime.now());
+  }
+
+  void recordRetrievals(QueueDelta delta, ZonedDateTime seen) {
+    for (var change : delta.changes()) {
+      if (change.type() != QueueDelta.ChangeType.STATUS_CHANGED
+          || !change.before().request().isNotYetFilled()
+          || !PickslipQueues.Pickslip.Request.Status.OPEN_IN_TRANSIT
+              .getCode()
+              .equalsIgnoreCase(change.after().request().status())) {
+        continue;
+      }
+      var requested = change.before().request().requestDate();
+      if (requested == null || requested.isAfter(seen)) {
+        continue;
+      }
+      retrievalTimes
+          .computeIfAbsent(
+              change.fromStack().toUpperCase(), k -> new RingBuffer<>(retrievalSamples))
+          .add(Duration.between(requested, seen));
+    }
+  }
+
+  // oldest first.
+  public List<DepthSample> getDepthHistory() {
+    return depthHistory.toList();
+  }
+
+  // for each configured stack with retrievals recorded, in configured order.
+  public List<RetrievalTimes> getRetrievalTimes() {
+    List<RetrievalTimes> times = new ArrayList<>();
+    for (var stack : stackLocations.getStacks()) {
+      var buffer = retrievalTimes.get(stack.code().toUpperCase());
+      if (buffer == null) {
+        continue;
+      }
+      var waits = buffer.toList().stream().mapToLong(Duration::toSeconds).sorted().toArray();
+      times.add(
+          new RetrievalTimes(
+              stack.code(),
+              waits.length,
+              percentile(waits, 50),
+              percentile(waits, 90),
+              percentile(waits, 99),
+              waits[waits.length - 1]));
+    }
+    return times;
+  }
+
+  // nearest rank percentile of sorted values.
+  static long percentile(long[] sorted, int percentile) {
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+}
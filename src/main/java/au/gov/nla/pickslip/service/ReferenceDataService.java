@@ -0,0 +1,99 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.FolioLocation;
+import au.gov.nla.pickslip.domain.FolioServicePoint;
+import au.gov.nla.pickslip.service.async.FolioAsyncService;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/*
+  Cache of FOLIO reference data - locations, service points, and (via FolioAsyncService) instance
+  note and alternative title types.  These almost never change, so they're loaded on first use and
+  then refreshed on their own, much longer, schedule (schedule.reference-data.cron) rather than on
+  every request retrieval.
+
+  The same list instances are returned until the next reload, so consumers (PickslipQueues) can
+  detect a change by identity and only rebuild what they derive from reference data when it does.
+*/
+@Service
+public class ReferenceDataService {
+
+  @Autowired FolioService folioService;
+
+  @Autowired FolioAsyncService folioAsyncService;
+
+  private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+  public record ReferenceData(
+      List<FolioLocation> locations,
+      List<FolioServicePoint> servicePoints,
+      LocalDateTime loaded) {}
+
+  private ReferenceData referenceData;
+
+  // current reference data, loading it from FOLIO if there is none (or it has been invalidated).
+  public synchronized ReferenceData get() throws IOException {
+    if (referenceData == null) {
+      referenceData = load();
+    }
+    return referenceData;
+  }
+
+  public List<FolioLocation> getFolioLocations() throws IOException {
+    return get().locations();
+  }
+
+  public List<FolioServicePoint> getFolioServicePoints() throws IOException {
+    return get().servicePoints();
+  }
+
+  // discard cached reference data - the next get() reloads from FOLIO.
+  public synchronized void invalidate() {
+    log.info("Reference data invalidated.");
+    referenceData = null;
+  }
+
+  // scheduled reload.  On failure the previously cached data is kept.
+  @Async
+  @Scheduled(cron = "${schedule.reference-data.cron}")
+  public void refresh() {
+    try {
+      ReferenceData reloaded = load();
+      synchronized (this) {
+        referenceData = reloaded;
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("Reference data refresh failed (keeping previous): " + e.getMessage());
+    }
+  }
+
+  private ReferenceData load() throws IOException {
+
+    List<FolioLocation> locations = folioService.getFolioLocations();
+    List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+
+    if (locations == null || servicePoints == null) {
+      throw new IllegalStateException("No locations or service points returned from FOLIO");
+    }
+
+    folioAsyncService.resolveTypes();
+
+    log.debug(
+        "Reference data loaded: {} locations, {} service points",
+        locations.size(),
+        servicePoints.size());
+
+    return new ReferenceData(
+        Collections.unmodifiableList(locations),
+        Collections.unmodifiableList(servicePoints),
+        LocalDateTime.now());
+  }
+}
@@ -0,0 +1,43 @@
+package au.gov.nla.pickslip.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  Fixed capacity buffer keeping the most recent values added - older values are overwritten, so
+  memory is bounded however long the app runs.  Thread safe.
+*/
+final class RingBuffer<T> {
+
+  private final Object[] values;
+  private int next; // index the next value is written to
+  private int size;
+
+  RingBuffer(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.values = new Object[capacity];
+  }
+
+  synchronized void add(T value) {
+    values[next] = value;
+    next = (next + 1) % values.length;
+    size = Math.min(size + 1, values.length);
+  }
+
+  // oldest first.
+  @SuppressWarnings("unchecked")
+  synchronized List<T> toList() {
+    List<T> list = new ArrayList<>(size);
+    int start = (next - size + values.length) % values.length;
+    for (int i = 0; i < size; i++) {
+      list.add((T) values[(start + i) % values.length]);
+    }
+    return list;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+}
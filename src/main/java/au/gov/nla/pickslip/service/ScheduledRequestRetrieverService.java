@@ -4,47 +4,150 @@ import au.gov.nla.pickslip.StackLocations;
 import au.gov.nla.pickslip.domain.*;
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.event.ContextRefreshedEvent;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Service;
 
 @Service
-public class ScheduledRequestRetrieverService {
+public class ScheduledRequestRetrieverService implements SchedulingConfigurer {
 
-  @Value("${schedule.retriever.cron}")
-  String runCron;
+  @Value("${schedule.retriever.min-interval-seconds}")
+  int minIntervalSeconds;
 
-  @Value("${schedule.retriever.cron.peak}")
-  String runCronPeak;
+  @Value("${schedule.retriever.max-interval-seconds}")
+  int maxIntervalSeconds;
+
+  @Value("${schedule.retriever.jitter}")
+  double jitter;
 
   @Value("${schedule.retriever.enabled}")
   Boolean enabled;
 
+  @Value("${folio.deadline.reference-data-seconds}")
+  int referenceDataDeadlineSeconds;
+
+  @Value("${folio.deadline.requests-seconds}")
+  int requestsDeadlineSeconds;
+
+  @Value("${folio.deadline.pickslips-seconds}")
+  int pickslipsDeadlineSeconds;
+
   @Autowired StackLocations stackLocations;
 
   @Autowired FolioService folioService;
 
+  @Autowired ReferenceDataService referenceDataService;
+
+  @Autowired ApplicationEventPublisher eventPublisher;
+
+  @Autowired QueueMetricsService queueMetricsService;
+
+  @Autowired SnapshotStore snapshotStore;
+
+  @Autowired
+  @Qualifier("folioAsyncExecutor")
+  Executor folioAsyncExecutor;
+
   private Logger log = LoggerFactory.getLogger(this.getClass());
 
   private LocalDateTime lastStarted, lastCompleted, lastFailed;
 
+  private final Map<String, Duration> stageDurations = new ConcurrentHashMap<>();
+
+  private volatile StringPool.Stats stringPoolStats;
+
+  private AdaptiveRefreshInterval refreshInterval;
+
+  // delay before the next scheduled run - set at the end of each run.
+  private volatile Duration nextDelay;
+
+  // when the next main run (all stacks without their own refresh interval) is due.  Stacks with
+  // a shorter interval can bring runs forward - those retrieve only the stacks which are due.
+  private Instant nextMainRun;
+
+  // pickslips by service point, merged from each stack's latest retrieval.
+  private final Map<FolioServicePoint, List<FolioPickslip>> latestPickslips = new HashMap<>();
+
+  // when each stack's pickslips were last attempted (for scheduling) and successfully retrieved,
+  // by stack code (upper case).
+  private final Map<String, Instant> stackAttempted = new ConcurrentHashMap<>();
+  private final Map<String, Instant> stackRetrieved = new ConcurrentHashMap<>();
+
+  // stacks whose latest retrieval failed or missed its deadline - showing previous pickslips.
+  private final Set<String> staleStacks = ConcurrentHashMap.newKeySet();
+
+  // not yet filled requests without pickslips whose stack has been retrieved early for them (see
+  // servicePointsMissingPickslips).  Only used by fetch(), under the lock.
+  private final Set<String> pickslipsSought = new HashSet<>();
+
+  // location codes unknown to reference data which it has been reloaded for - once per location,
+  // as FOLIO may never list it.  Only used by fetch(), under the lock.
+  private final Set<String> locationsReloadedFor = new HashSet<>();
+
+  // FOLIO calls still running, by stage (or service point for pickslips).  A deadline only stops
+  // a run waiting - the call keeps its executor thread until FOLIO answers - so later runs wait on
+  // the same call rather than starting another, and one hanging call can't fill the executor.
+  private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+  // freshness of a stack's pickslips: when last retrieved, and whether the latest attempt failed.
+  public record StackFreshness(LocalDateTime updated, boolean stale) {
+
+    public Duration age() {
+      return updated == null ? null : Duration.between(updated, LocalDateTime.now());
+    }
+  }
+
   @PostConstruct
   private void init() {
+    this.refreshInterval =
+        new AdaptiveRefreshInterval(
+            Duration.ofSeconds(minIntervalSeconds), Duration.ofSeconds(maxIntervalSeconds), jitter);
+    this.nextDelay = refreshInterval.current();
     this.log.info(
         String.format(
-            "Scheduled FOLIO request retriever cronspec: %s.. peak time: %s",
-            runCron, runCronPeak));
+            "Scheduled FOLIO request retriever interval: %ss - %ss (jitter %s)",
+            minIntervalSeconds, maxIntervalSeconds, jitter));
+    restoreSnapshot();
+  }
+
+  // show the queues saved by the last run until they're retrieved - every stack is stale, as of
+  // when they were saved, until its first live retrieval.
+  private void restoreSnapshot() {
+    var saved = snapshotStore.load();
+    if (saved == null || !pickslipQueues.restore(saved.snapshot())) {
+      return;
+    }
+    for (var stack : stackLocations.getStacks()) {
+      String key = stack.code().toUpperCase();
+      stackRetrieved.put(key, saved.savedAt());
+      staleStacks.add(key);
+    }
   }
 
   public LocalDateTime getLastStarted() {
@@ -59,6 +162,37 @@ public class ScheduledRequestRetrieverService {
     return lastFailed;
   }
 
+  // duration of each stage of the most recent run - shows which FOLIO source dominates.
+  public Map<String, Duration> getLastStageDurations() {
+    return Map.copyOf(stageDurations);
+  }
+
+  // string deduplication over the most recent run: distinct strings retained by the model (and
+  // their approximate size), and duplicates avoided.
+  public StringPool.Stats getStringPoolStats() {
+    return stringPoolStats;
+  }
+
+  // freshness of each configured stack, by stack code.
+  public Map<String, StackFreshness> getStackFreshness() {
+    Map<String, StackFreshness> freshness = new HashMap<>();
+    for (var stack : stackLocations.getStacks()) {
+      String key = stack.code().toUpperCase();
+      var retrieved = stackRetrieved.get(key);
+      freshness.put(
+          stack.code(),
+          new StackFreshness(
+              retrieved == null ? null : LocalDateTime.ofInstant(retrieved, ZoneId.systemDefault()),
+              staleStacks.contains(key)));
+    }
+    return freshness;
+  }
+
+  // current (un-jittered) interval between runs.
+  public Duration getRefreshInterval() {
+    return refreshInterval.current();
+  }
+
   public Boolean isEnabled() {
     return enabled;
   }
@@ -66,7 +200,7 @@ public class ScheduledRequestRetrieverService {
   // main data structure..
   private final PickslipQueues pickslipQueues = new PickslipQueues();
 
-  // avoid overlapping scheduled invocations
+  // avoid overlapping invocations (scheduled runs never overlap, but fetch() is public)
   private ReentrantLock lock = new ReentrantLock();
 
   @Bean
@@ -76,22 +210,32 @@ public class ScheduledRequestRetrieverService {
     }
   }
 
-  // peak time scheduler - proxy to fetch()
-  @Async
-  @Scheduled(cron = "${schedule.retriever.cron.peak}")
-  public void fetchPeak() throws IOException {
-    fetch();
+  // runs back to back on the scheduler thread, each delayed by the interval the previous run
+  // adapted to - the first runs as soon as the scheduler starts.
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+    taskRegistrar.addTriggerTask(
+        this::scheduledFetch,
+        context ->
+            context.lastCompletion() == null
+                ? Instant.now()
+                : context.lastCompletion().plus(this.nextDelay));
+  }
+
+  private void scheduledFetch() {
+    try {
+      fetch();
+    } catch (IOException | RuntimeException e) {
+      // already logged; the next run is scheduled regardless.
+    }
   }
 
-  // event listener and scheduler will be on different threads - event listener to kick off job when
-  // app starts.
-  @Async
-  @Scheduled(cron = "${schedule.retriever.cron}")
-  @EventListener(ContextRefreshedEvent.class)
   public void fetch() throws IOException {
 
     log.debug("Scheduled run..");
     boolean gotLock = lock.tryLock();
+    long runStart = 0;
+    boolean mainRun = false;
 
     try {
 
@@ -102,29 +246,113 @@ public class ScheduledRequestRetrieverService {
 
       if (!isEnabled()) {
         log.info("Scheduled retriever not enabled: bailing.");
+        this.nextDelay = Duration.ofSeconds(maxIntervalSeconds);
         return;
       }
 
       this.lastStarted = LocalDateTime.now();
+      this.stageDurations.clear();
+      runStart = System.nanoTime();
+
+      Instant now = Instant.now();
+      mainRun = this.nextMainRun == null || !now.isBefore(this.nextMainRun);
+      boolean retrieveMain = mainRun;
+
+      // reference data (locations, service points - usually cached) and requests are independent
+      // and start together; pickslips for stacks which are due fan out as soon as service points
+      // arrive.  Each has a deadline: without reference data or requests there's nothing to
+      // publish, but a service point whose pickslips are late just keeps its previous ones.
+      var referenceDataStage =
+          inFlight("referenceData", () -> stage("referenceData", referenceDataService::get))
+              .orTimeout(referenceDataDeadlineSeconds, TimeUnit.SECONDS);
+      long requestsStart = System.nanoTime();
+      var requestsStage =
+          inFlight("requests", folioService::syncFolioRequestsAsync)
+              .orTimeout(requestsDeadlineSeconds, TimeUnit.SECONDS)
+              .whenComplete((r, t) -> recordStage("requests", requestsStart));
+      var pickslipsStage =
+          referenceDataStage.thenCompose(
+              referenceData -> {
+                long start = System.nanoTime();
+                var due = stackServicePointsDue(referenceData.servicePoints(), now, retrieveMain);
+                return retrievePickslips(due)
+                    .whenComplete((r, t) -> recordStage("pickslips", start));
+              });
 
-      List<FolioLocation> locations = folioService.getFolioLocations();
-      List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+      FolioService.join(CompletableFuture.allOf(referenceDataStage, requestsStage, pickslipsStage));
+
+      List<FolioLocation> locations = referenceDataStage.join().locations();
+      List<FolioServicePoint> servicePoints = referenceDataStage.join().servicePoints();
       Map<FolioServicePoint, List<FolioPickslip>> pickslipsForServicePoints =
-          folioService.getPickslipsForServicePoints(servicePoints);
-      List<FolioRequest> notFilled = folioService.getFolioRequests();
+          mergePickslips(servicePoints, pickslipsStage.join(), now);
+      if (!staleStacks.isEmpty()) {
+        log.warn("Showing previous pickslips for stale stacks: {}", staleStacks);
+      }
+      List<FolioRequest> notFilled = requestsStage.join();
 
+      // requests new since their stack's pickslips were last retrieved would show as unavailable
+      // until its next retrieval - retrieve those stacks now, whether due or not.
+      var missing =
+          servicePointsMissingPickslips(
+              notFilled,
+              locations,
+              servicePoints,
+              pickslipsForServicePoints,
+              pickslipsStage.join().attempted());
+      if (!missing.isEmpty()) {
+        long start = System.nanoTime();
+        log.debug("Retrieving pickslips for new requests in {}", missing);
+        pickslipsForServicePoints =
+            mergePickslips(servicePoints, retrievePickslips(missing).join(), now);
+        recordStage("missingPickslips", start);
+      }
+
+      long updateStart = System.nanoTime();
+      QueueDelta delta;
       synchronized (this.pickslipQueues) {
-        pickslipQueues.update(
-            stackLocations, notFilled, servicePoints, locations, pickslipsForServicePoints);
+        delta =
+            pickslipQueues.update(
+                stackLocations, notFilled, servicePoints, locations, pickslipsForServicePoints);
+      }
+      recordStage("update", updateStart);
+
+      // requests at locations missing from reference data may be at new locations - reload it.
+      var unknownLocations = pickslipQueues.getUnknownLocationCodes();
+      if (locationsReloadedFor.addAll(unknownLocations)) {
+        log.warn("Requests at unknown locations {}: reloading reference data", unknownLocations);
+        referenceDataService.invalidate();
       }
+      locationsReloadedFor.retainAll(unknownLocations);
+
+      // subscribers (@EventListener) hear about changes only - published outside the model lock.
+      if (!delta.isEmpty()) {
+        eventPublisher.publishEvent(delta);
+        snapshotStore.save(pickslipQueues.snapshot());
+      }
+      int changes = delta.changes().size();
+      queueMetricsService.sample(pickslipQueues.snapshot(), LocalDateTime.now());
+
+      this.stringPoolStats = folioService.rotateStringPool();
+      log.debug("String pool: {}", this.stringPoolStats);
+
+      log.debug("Scheduled run stage durations: {}", this.stageDurations);
+
+      scheduleNext(mainRun, changes, runStart, false);
+      log.debug("{} changes: next run in {}", changes, this.nextDelay);
 
       this.lastCompleted = LocalDateTime.now();
 
       log.debug(".. Scheduled run complete.");
 
-    } catch (RuntimeException re) {
+    } catch (IOException | RuntimeException re) {
       log.error("Scheduled run failed (rethrowing): " + re.getMessage());
       this.lastFailed = LocalDateTime.now();
+      scheduleNext(mainRun, 0, runStart, true);
+      // a stack missing from reference data may be a new service point - reload it next run.  Other
+      // failures (e.g. FOLIO unavailable) leave it cached, rather than adding to FOLIO's load.
+      if (re instanceof PickslipQueues.ReferenceDataException) {
+        referenceDataService.invalidate();
+      }
       throw re;
     } finally {
       if (gotLock) {
@@ -132,4 +360,213 @@ public class ScheduledRequestRetrieverService {
       }
     }
   }
+
+  // service points of configured stacks whose pickslips are due: those with their own refresh
+  // interval once it has elapsed, the rest on main runs.  Other service points aren't displayed, so
+  // aren't retrieved.
+  List<FolioServicePoint> stackServicePointsDue(
+      List<FolioServicePoint> servicePoints, Instant now, boolean mainRun) {
+
+    List<FolioServicePoint> due = new ArrayList<>();
+    for (var sp : servicePoints) {
+      var stack = stackLocations.getStackForCode(sp.code());
+      if (stack == null) {
+        continue;
+      }
+      var interval = stack.refreshInterval();
+      var attempted = stackAttempted.get(stack.code().toUpperCase());
+      if (interval == null ? mainRun : attempted == null || !now.isBefore(attempted.plus(interval))) {
+        due.add(sp);
+      }
+    }
+    return due;
+  }
+
+  // service points of configured stacks (not retrieved this run) with not yet filled requests which
+  // have no pickslip.  Each request brings a retrieval forward once only - FOLIO may never have a
+  // pickslip for it, and that mustn't mean retrieving its stack on every run.
+  List<FolioServicePoint> servicePointsMissingPickslips(
+      List<FolioRequest> requests,
+      List<FolioLocation> locations,
+      List<FolioServicePoint> servicePoints,
+      Map<FolioServicePoint, List<FolioPickslip>> pickslips,
+      List<FolioServicePoint> attempted) {
+
+    Set<String> withPickslips = new HashSet<>();
+    for (var list : pickslips.values()) {
+      if (list != null) {
+        list.forEach(p -> withPickslips.add(p.requestId()));
+      }
+    }
+    Map<String, String> servicePointIdByLocationCode = new HashMap<>();
+    for (var location : locations) {
+      servicePointIdByLocationCode.put(location.code(), location.primaryServicePoint());
+    }
+
+    // request ids without pickslips, by service point id.
+    Set<String> missing = new HashSet<>();
+    Map<String, List<String>> missingByServicePointId = new HashMap<>();
+    for (var req : requests) {
+      if (!PickslipQueues.Pickslip.Request.Status.OPEN_NOT_YET_FILLED
+              .getCode()
+              .equalsIgnoreCase(req.status())
+          || withPickslips.contains(req.id())
+          || req.item() == null
+          || req.item().location() == null) {
+        continue;
+      }
+      missing.add(req.id());
+      var servicePointId = servicePointIdByLocationCode.get(req.item().location().code());
+      if (servicePointId != null && !pickslipsSought.contains(req.id())) {
+        missingByServicePointId
+            .computeIfAbsent(servicePointId, k -> new ArrayList<>())
+            .add(req.id());
+      }
+    }
+    pickslipsSought.retainAll(missing);
+
+    List<FolioServicePoint> due = new ArrayList<>();
+    for (var sp : servicePoints) {
+      var ids = missingByServicePointId.get(sp.id());
+      if (ids != null
+          && !attempted.contains(sp)
+          && stackLocations.getStackForCode(sp.code()) != null) {
+        due.add(sp);
+        pickslipsSought.addAll(ids);
+      }
+    }
+    return due;
+  }
+
+  private record PickslipRetrieval(
+      List<FolioServicePoint> attempted, Map<FolioServicePoint, List<FolioPickslip>> retrieved) {}
+
+  // pickslips for each service point, each call with its own deadline.  Completes (normally) when
+  // every call has completed, failed or timed out - only those which completed are in the result.
+  private CompletableFuture<PickslipRetrieval> retrievePickslips(
+      List<FolioServicePoint> servicePoints) {
+
+    Map<FolioServicePoint, List<FolioPickslip>> retrieved =
+        Collections.synchronizedMap(new HashMap<>()); // null values: no pickslips
+
+    var calls =
+        servicePoints.stream()
+            .map(
+                sp ->
+                    inFlight(
+                            "pickslips:" + sp.id(),
+                            () -> folioService.getPickslipsForServicePointAsync(sp.id()))
+                        .orTimeout(pickslipsDeadlineSeconds, TimeUnit.SECONDS)
+                        .handle(
+                            (pickslips, t) -> {
+                              if (t == null) {
+                                retrieved.put(sp, pickslips);
+                              } else {
+                                log.warn(
+                                    "Pickslips for {} not retrieved (keeping previous): {}",
+                                    sp.code(),
+                                    t instanceof CompletionException ? t.getCause() : t);
+                              }
+                              return null;
+                            }))
+            .toArray(CompletableFuture[]::new);
+
+    return CompletableFuture.allOf(calls)
+        .thenApply(
+            v -> {
+              synchronized (retrieved) {
+                return new PickslipRetrieval(servicePoints, new HashMap<>(retrieved));
+              }
+            });
+  }
+
+  // merge the latest retrieval into pickslips from earlier runs, dropping any service point which
+  // is no longer a configured stack.  Service points which weren't retrieved keep their previous
+  // pickslips, flagged stale.
+  private Map<FolioServicePoint, List<FolioPickslip>> mergePickslips(
+      List<FolioServicePoint> servicePoints, PickslipRetrieval retrieval, Instant retrievedAt) {
+
+    latestPickslips
+        .keySet()
+        .removeIf(
+            sp -> !servicePoints.contains(sp) || stackLocations.getStackForCode(sp.code()) == null);
+    latestPickslips.putAll(retrieval.retrieved());
+
+    for (var sp : retrieval.attempted()) {
+      String key = sp.code().toUpperCase();
+      stackAttempted.put(key, retrievedAt);
+      if (retrieval.retrieved().containsKey(sp)) {
+        stackRetrieved.put(key, retrievedAt);
+        staleStacks.remove(key);
+      } else {
+        staleStacks.add(key);
+      }
+    }
+
+    return new HashMap<>(latestPickslips);
+  }
+
+  // the next run is the next main run (adapted after each main run), or sooner if a stack with its
+  // own refresh interval is due before then (unless this run failed - no retrying early).
+  private void scheduleNext(boolean mainRun, int changes, long runStart, boolean failed) {
+
+    Instant now = Instant.now();
+    if (mainRun || this.nextMainRun == null) {
+      var delay =
+          refreshInterval.next(changes, Duration.ofNanos(System.nanoTime() - runStart), failed);
+      this.nextMainRun = now.plus(delay);
+    }
+
+    Instant next = this.nextMainRun;
+    for (var stack : failed ? List.<StackLocations.Location>of() : stackLocations.getStacks()) {
+      var attempted = stackAttempted.get(stack.code().toUpperCase());
+      if (stack.refreshInterval() != null && attempted != null) {
+        var due = attempted.plus(stack.refreshInterval());
+        if (due.isBefore(next)) {
+          next = due;
+        }
+      }
+    }
+
+    this.nextDelay = now.isBefore(next) ? Duration.between(now, next) : Duration.ZERO;
+  }
+
+  private interface FolioCall<T> {
+    T call() throws IOException;
+  }
+
+  // run a FOLIO retrieval on the async executor, recording its duration.
+  private <T> CompletableFuture<T> stage(String name, FolioCall<T> call) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          long start = System.nanoTime();
+          try {
+            return call.call();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } finally {
+            recordStage(name, start);
+          }
+        },
+        folioAsyncExecutor);
+  }
+
+  // the call for key still running from an earlier run, or a new one.  Returns a copy, so a
+  // deadline (orTimeout) applied to it doesn't complete the call itself.
+  @SuppressWarnings("unchecked")
+  <T> CompletableFuture<T> inFlight(String key, Supplier<CompletableFuture<T>> call) {
+    var running = (CompletableFuture<T>) inFlight.get(key);
+    if (running != null && !running.isDone()) {
+      log.warn("{} still running from an earlier run: waiting on that", key);
+      return running.copy();
+    }
+    var started = call.get();
+    inFlight.put(key, started);
+    started.whenComplete((r, t) -> inFlight.remove(key, started));
+    return started.copy();
+  }
+
+  private void recordStage(String name, long startNanos) {
+    stageDurations.put(name, Duration.ofNanos(System.nanoTime() - startNanos));
+  }
 }
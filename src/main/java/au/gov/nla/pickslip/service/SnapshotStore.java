@@ -0,0 +1,105 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.SnapshotCodec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/*
+  Keeps the latest PickslipQueues snapshot on local disk (snapshot.store.path), so a restart or
+  deploy can show the last known queues - flagged stale - until FOLIO has been queried, and there's
+  something to show if FOLIO is down when the app starts.
+
+  Written to a temporary file then moved into place, so a crash mid-write never leaves a partial
+  snapshot.  Holds patron names and barcodes: the file is only readable by the app's user.
+  Failures are logged, never thrown - the store is an optimisation, not a source of truth.
+*/
+@Service
+public class SnapshotStore {
+
+  @Value("${snapshot.store.path:}")
+  String path;
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  public boolean isEnabled() {
+    return path != null && !path.isBlank();
+  }
+
+  public void save(PickslipQueues.Snapshot snapshot) {
+    if (!isEnabled()) {
+      return;
+    }
+    long start = System.nanoTime();
+    Path target = Path.of(path);
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      if (target.getParent() != null) {
+        Files.createDirectories(target.getParent());
+      }
+      createOwnerOnly(temp);
+      try (var out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+        SnapshotCodec.write(snapshot, Instant.now(), out);
+      }
+      try {
+        Files.move(
+            temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      log.debug(
+          "Saved snapshot version {} to {} ({} bytes) in {}ms",
+          snapshot.getVersion(),
+          target,
+          Files.size(target),
+          (System.nanoTime() - start) / 1_000_000);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to save snapshot to {}: {}", target, e.getMessage());
+    }
+  }
+
+  // the saved snapshot - null if there isn't one (or it can't be read).
+  public SnapshotCodec.Saved load() {
+    if (!isEnabled() || !Files.exists(Path.of(path))) {
+      return null;
+    }
+    long start = System.nanoTime();
+    try (var in = new BufferedInputStream(Files.newInputStream(Path.of(path)))) {
+      var saved = SnapshotCodec.read(in);
+      log.info(
+          "Loaded snapshot version {} saved {} from {} in {}ms",
+          saved.snapshot().getVersion(),
+          saved.savedAt(),
+          path,
+          (System.nanoTime() - start) / 1_000_000);
+      return saved;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to load snapshot from {} (ignoring): {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  // a new empty file only the owner can read - before anything is written to it (replacing any
+  // left by a failed save, whatever its permissions).
+  private static void createOwnerOnly(Path file) throws IOException {
+    Files.deleteIfExists(file);
+    try {
+      Files.createFile(
+          file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException e) {
+      // not a POSIX file system
+      Files.createFile(file);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.QueueDelta;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+
+/*
+  Rendered HTML of each stack's queue (templates/fragments), cached per snapshot version.  The
+  rows are the same for every viewer until the model changes, so they're rendered once, and
+  pages only render their own header and stitch these in.  Dropped whenever a new snapshot is
+  published.
+
+  Keyed by showOnly too (it's carried in links), so the number of entries is capped - requests
+  past the cap are rendered but not cached.
+
+  Stack pages are windowed: pages.stack-page-size rows at a time, visitors then queue, so however
+  long a stack's backlog gets a page renders (and a browser lays out) the same number of rows.
+*/
+@Service
+public class StackFragmentCache {
+
+  public static final String INDEX_ROWS = "fragments/index-rows";
+  public static final String STACK_QUEUES = "fragments/stack-queues";
+
+  private static final int MAX_ENTRIES = 1000;
+
+  @Value("${folio.request-view-prefix}")
+  String requestViewPrefix;
+
+  @Value("${folio.request-view-postfix}")
+  String requestViewPostfix;
+
+  @Value("${pages.stack-page-size}")
+  int pageSize;
+
+  @Autowired ITemplateEngine templateEngine;
+
+  private record Key(String template, String stackCode, String showOnly, int page, long version) {}
+
+  // one page (1 based) of a stack's visitors followed by its queue: the ranges of each shown.
+  record Window(
+      int page, int pages, int visitorsFrom, int visitorsTo, int queueFrom, int queueTo) {
+
+    static Window of(int visitors, int queue, int page, int pageSize) {
+      int pages = Math.max(1, (visitors + queue + pageSize - 1) / pageSize);
+      page = Math.min(Math.max(page, 1), pages);
+      int from = (page - 1) * pageSize;
+      int to = Math.min(from + pageSize, visitors + queue);
+      return new Window(
+          page,
+          pages,
+          Math.min(from, visitors),
+          Math.min(to, visitors),
+          Math.max(0, from - visitors),
+          Math.max(0, to - visitors));
+    }
+  }
+
+  public record Stats(long hits, long misses, int entries) {
+
+    @JsonProperty
+    public double hitRate() {
+      return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+  }
+
+  private final Map<Key, String> fragments = new ConcurrentHashMap<>();
+  private volatile long version;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  // rendered template for a stack (null if it's not configured) in this snapshot.
+  public String get(
+      String template,
+      StackLocations.Location stack,
+      String[] showOnly,
+      PickslipQueues.Snapshot queues,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+    return get(template, stack, showOnly, 1, queues, request, response);
+  }
+
+  // rendered template for a page of a stack's requests - past the last page is the last page.
+  public String get(
+      String template,
+      StackLocations.Location stack,
+      String[] showOnly,
+      int page,
+      PickslipQueues.Snapshot queues,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+
+    if (stack == null) {
+      return "";
+    }
+    if (queues.getVersion() > this.version) {
+      evictBefore(queues.getVersion());
+    }
+
+    var visitors = orEmpty(queues.getVisitorsForStack(stack.code()));
+    var queue = orEmpty(queues.getPickslipsForStack(stack.code()));
+    var window = Window.of(visitors.size(), queue.size(), page, pageSize);
+
+    var key =
+        new Key(
+            template,
+            stack.code().toUpperCase(),
+            showOnly == null ? "" : String.join(",", showOnly),
+            window.page(),
+            queues.getVersion());
+    String html = fragments.get(key);
+    if (html != null) {
+      hits.increment();
+      return html;
+    }
+
+    misses.increment();
+    html = render(template, stack, showOnly, visitors, queue, window, queues, request, response);
+    if (fragments.size() < MAX_ENTRIES && queues.getVersion() >= this.version) {
+      fragments.putIfAbsent(key, html);
+    }
+    return html;
+  }
+
+  @EventListener
+  public void onQueueChange(QueueDelta delta) {
+    evictBefore(delta.toVersion());
+  }
+
+  public Stats getStats() {
+    return new Stats(hits.sum(), misses.sum(), fragments.size());
+  }
+
+  private synchronized void evictBefore(long version) {
+    if (version > this.version) {
+      this.version = version;
+      fragments.keySet().removeIf(k -> k.version() < version);
+    }
+  }
+
+  private static List<PickslipQueues.Pickslip> orEmpty(List<PickslipQueues.Pickslip> pickslips) {
+    return pickslips == null ? List.of() : pickslips;
+  }
+
+  private String render(
+      String template,
+      StackLocations.Location stack,
+      String[] showOnly,
+      List<PickslipQueues.Pickslip> visitors,
+      List<PickslipQueues.Pickslip> queue,
+      Window window,
+      PickslipQueues.Snapshot queues,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+
+    // everything either template uses.  Links need the request (for the context path).
+    Map<String, Object> variables = new HashMap<>();
+    variables.put("requestViewPrefix", requestViewPrefix);
+    variables.put("requestViewPostfix", requestViewPostfix);
+    variables.put("showOnly", showOnly);
+    variables.put("queues", queues);
+    variables.put("stacks", List.of(stack));
+    variables.put("stack", stack);
+    variables.put("visitors", visitors.subList(window.visitorsFrom(), window.visitorsTo()));
+    variables.put("queue", queue.subList(window.queueFrom(), window.queueTo()));
+    variables.put("visitorCount", visitors.size());
+    variables.put("queueCount", queue.size());
+    variables.put("page", window.page());
+    variables.put("pages", window.pages());
+
+    var exchange =
+        JakartaServletWebApplication.buildApplication(request.getServletContext())
+            .buildExchange(request, response);
+    return templateEngine.process(
+        template, new WebContext(exchange, request.getLocale(), variables));
+  }
+}
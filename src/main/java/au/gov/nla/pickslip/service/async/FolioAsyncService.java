@@ -42,10 +42,10 @@ public class FolioAsyncService {
   @Autowired
   FolioConfiguration folioConfiguration;
 
-  String folioAccessConditionsUuid;
-  String folioTermsOfUseNoteUuid;
-  String folioSpineLabelNoteTypeUuid;
-  String folioVariantTitleAltTitleTypeUuid;
+  volatile String folioAccessConditionsUuid;
+  volatile String folioTermsOfUseNoteUuid;
+  volatile String folioSpineLabelNoteTypeUuid;
+  volatile String folioVariantTitleAltTitleTypeUuid;
 
   private Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -60,38 +60,51 @@ public class FolioAsyncService {
         "FOLIO_PASSWORD", folioConfiguration.getPassword(), "FOLIO_API_URL",
         folioConfiguration.getApiUrl(), "FOLIO_USERNAME", folioConfiguration.getUsername()));
 
+    resolveTypes();
+  }
+
+  // resolve configured note and alternative title type names to FOLIO UUIDs.  Called at startup,
+  // and again whenever reference data is refreshed (see ReferenceDataService).  Previously
+  // resolved values are kept if resolution fails.
+  public synchronized void resolveTypes() throws IOException {
+
     FOLIOInstanceNoteTypesAPI folioInstanceNoteTypesAPI =
         new FOLIOInstanceNoteTypesAPI(folioApiCredentials);
 
-    this.folioAccessConditionsUuid =
+    String accessConditionsUuid =
         folioInstanceNoteTypesAPI.resolveNoteType(folioAccessConditionsNoteType);
-    this.folioTermsOfUseNoteUuid =
+    String termsOfUseNoteUuid =
         folioInstanceNoteTypesAPI.resolveNoteType(folioTermsOfUseNoteType);
-    this.folioSpineLabelNoteTypeUuid =
+    String spineLabelNoteTypeUuid =
         folioInstanceNoteTypesAPI.resolveNoteType(folioSpineLabelNoteType);
 
     FOLIOAlternativeTitleTypesAPI folioAlternativeTitleTypesAPI =
         new FOLIOAlternativeTitleTypesAPI(folioApiCredentials);
 
-    this.folioVariantTitleAltTitleTypeUuid =
+    String variantTitleAltTitleTypeUuid =
         folioAlternativeTitleTypesAPI.resolveAlternativeTitleType(folioVariantTitleAltTitleType);
 
-    if (folioAccessConditionsUuid == null || folioAccessConditionsUuid.isBlank()) {
+    if (accessConditionsUuid == null || accessConditionsUuid.isBlank()) {
       throw new IllegalStateException(
           "Can't initialize: can't resolve instance note type - access conditions");
     }
-    if (folioTermsOfUseNoteUuid == null || folioTermsOfUseNoteUuid.isBlank()) {
+    if (termsOfUseNoteUuid == null || termsOfUseNoteUuid.isBlank()) {
       throw new IllegalStateException(
           "Can't initialize: can't resolve instance note types - terms of use");
     }
-    if (folioSpineLabelNoteTypeUuid == null || folioSpineLabelNoteTypeUuid.isBlank()) {
+    if (spineLabelNoteTypeUuid == null || spineLabelNoteTypeUuid.isBlank()) {
       throw new IllegalStateException(
           "Can't initialize: can't resolve instance note types - spine label");
     }
-    if (folioVariantTitleAltTitleTypeUuid == null || folioVariantTitleAltTitleTypeUuid.isBlank()) {
+    if (variantTitleAltTitleTypeUuid == null || variantTitleAltTitleTypeUuid.isBlank()) {
       throw new IllegalStateException(
           "Can't initialize: can't resolve instance alternative title types - variant title");
     }
+
+    this.folioAccessConditionsUuid = accessConditionsUuid;
+    this.folioTermsOfUseNoteUuid = termsOfUseNoteUuid;
+    this.folioSpineLabelNoteTypeUuid = spineLabelNoteTypeUuid;
+    this.folioVariantTitleAltTitleTypeUuid = variantTitleAltTitleTypeUuid;
   }
 
   // ptrArray points to an array of objects or strings, ptrValue is the json name from which to
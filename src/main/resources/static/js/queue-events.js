@@ -0,0 +1,107 @@
+/*
+  Keeps the queues on a page up to date without reloading it.  Elements with data-stack and
+  data-fragment hold one stack's queue: when server-sent events (api/events) report that stack
+  changed, the element is replaced with a fresh copy from its data-fragment url.  If changes may
+  have been missed (while reconnecting) every stack on the page is refreshed.
+
+  Pages without queues, and browsers without EventSource, reload every 30 seconds as before.  Pages
+  with queues are still reloaded occasionally, to update freshness in the header.
+*/
+(function () {
+    const RELOAD_MS = 30000;
+    const FULL_RELOAD_MS = 10 * 60000;
+
+    let events = null;
+    let reloadTimeout = null;
+    let version = null;
+
+    // latest fetch of each stack - an earlier, slower response mustn't replace a later one.
+    const latest = {};
+    let fetches = 0;
+
+    function sections() {
+        return document.querySelectorAll('[data-stack][data-fragment]');
+    }
+
+    function refresh(section) {
+        const code = section.dataset.stack.toUpperCase();
+        const fetchId = latest[code] = ++fetches;
+        fetch(section.dataset.fragment, {credentials: 'same-origin'})
+            .then(response => response.ok ? response.text() : Promise.reject(response.status))
+            .then(html => {
+                if (latest[code] !== fetchId) {
+                    return;
+                }
+                const current = document.querySelector('[data-stack="' + section.dataset.stack + '"][data-fragment]');
+                if (current) {
+                    const template = document.createElement('template');
+                    template.innerHTML = html.trim();
+                    current.replaceWith(template.content);
+                }
+            })
+            .catch(() => location.reload());
+    }
+
+    function connect() {
+        events = new EventSource('api/events');
+
+        events.addEventListener('version', e => {
+            const current = JSON.parse(e.data);
+            if (current !== version) {
+                sections().forEach(refresh);
+            }
+            version = current;
+        });
+
+        events.addEventListener('queues', e => {
+            const changes = JSON.parse(e.data);
+            const missed = changes.fromVersion !== version;
+            version = changes.toVersion;
+            sections().forEach(section => {
+                if (missed || changes.stacks[section.dataset.stack.toUpperCase()]) {
+                    refresh(section);
+                }
+            });
+        });
+
+        // the browser reconnects by itself unless the server refused - then fall back to reloading.
+        events.onerror = () => {
+            if (events.readyState === EventSource.CLOSED) {
+                events = null;
+                reloadTimeout = setTimeout(() => location.reload(), RELOAD_MS);
+            }
+        };
+    }
+
+    function start() {
+        const main = document.querySelector('main');
+        if (window.EventSource && main && main.dataset.version && sections().length > 0) {
+            version = Number(main.dataset.version);
+            connect();
+            reloadTimeout = setTimeout(() => location.reload(), FULL_RELOAD_MS);
+        } else {
+            reloadTimeout = setTimeout(() => location.reload(), RELOAD_MS);
+        }
+    }
+
+    function stop() {
+        if (events) {
+            events.close();
+            events = null;
+        }
+        if (reloadTimeout) {
+            clearTimeout(reloadTimeout);
+            reloadTimeout = null;
+        }
+    }
+
+    // the auto refresh switch in the header.
+    window.setAuto = function () {
+        stop();
+        if (event.target.checked) {
+            start();
+        }
+    };
+
+    document.addEventListener('DOMContentLoaded', start);
+})();
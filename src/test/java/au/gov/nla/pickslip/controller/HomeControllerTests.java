@@ -1,9 +1,21 @@
 package au.gov.nla.pickslip.controller;
 
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.service.ScheduledRequestRetrieverService;
+import au.gov.nla.pickslip.service.StackFragmentCache;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.ui.ExtendedModelMap;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 @ExtendWith(MockitoExtension.class)
 public class HomeControllerTests {
@@ -20,4 +32,57 @@ public class HomeControllerTests {
         Assertions.assertEquals(homeController.getDeweyish("mfm X 650/reels 5,704-5,790."), 0);
     }
 
+    @Test
+    void indexNotModifiedUntilModelChanges() {
+
+        HomeController homeController = new HomeController();
+        homeController.pickslipQueues = new PickslipQueues();
+        homeController.stackLocations = new StackLocations();
+        homeController.stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell")));
+        homeController.scheduledRequestRetrieverService = Mockito.mock(ScheduledRequestRetrieverService.class);
+        Mockito.when(homeController.scheduledRequestRetrieverService.getStackFreshness()).thenReturn(Map.of());
+        homeController.stackFragmentCache = Mockito.mock(StackFragmentCache.class);
+
+        var first = new MockHttpServletResponse();
+        Assertions.assertEquals("index", homeController.index(null, new ExtendedModelMap(), null,
+                new MockHttpServletRequest("GET", "/home"), first));
+        String etag = first.getHeader("ETag");
+        Assertions.assertNotNull(etag);
+
+        var request = new MockHttpServletRequest("GET", "/home");
+        request.addHeader("If-None-Match", etag);
+        var second = new MockHttpServletResponse();
+        Assertions.assertNull(homeController.index(null, new ExtendedModelMap(), null,
+                request, second), "Should not render");
+        Assertions.assertEquals(304, second.getStatus());
+
+        var third = new MockHttpServletResponse();
+        Assertions.assertEquals("index", homeController.index(new String[] {"MITCHELL-SP"}, new ExtendedModelMap(), null,
+                request, third), "Should differ by showOnly");
+        Assertions.assertEquals(200, third.getStatus());
+    }
+
+    @Test
+    void staleAgeChangesETag() {
+
+        var queues = new PickslipQueues().snapshot();
+        var stacks = List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell"));
+        var now = LocalDateTime.of(2024, 5, 1, 10, 0);
+        var updated = now.minusSeconds(90);
+
+        var stale = Map.of("MITCHELL-SP", new ScheduledRequestRetrieverService.StackFreshness(updated, true));
+        Assertions.assertEquals(
+                HomeController.pageETag("home", queues, null, stacks, stale, null, now),
+                HomeController.pageETag("home", queues, null, stacks, stale, null, now.plusSeconds(20)),
+                "Should be the same within the minute shown");
+        Assertions.assertNotEquals(
+                HomeController.pageETag("home", queues, null, stacks, stale, null, now),
+                HomeController.pageETag("home", queues, null, stacks, stale, null, now.plusSeconds(30)),
+                "Should change with the minutes shown");
+
+        var fresh = Map.of("MITCHELL-SP", new ScheduledRequestRetrieverService.StackFreshness(updated, false));
+        Assertions.assertEquals(
+                HomeController.pageETag("home", queues, null, stacks, fresh, null, now),
+                HomeController.pageETag("home", queues, null, stacks, fresh, null, now.plusMinutes(5)));
+    }
 }
@@ -0,0 +1,28 @@
+package au.gov.nla.pickslip.controller;
+
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class QueueApiControllerTests {
+
+    @Test
+    void rowsLeaveOutPatronDetailsPagesDoNotShow() {
+
+        var pickslip = new PickslipQueues.Pickslip(false, false,
+                new PickslipQueues.Pickslip.Request("req-1",
+                        new PickslipQueues.Pickslip.Request.Requester("patron-uuid", "P1234567", "Ada", "Lovelace"),
+                        null, "please hurry", "Staff", "Open - Not yet filled", "1", List.of()),
+                null, null);
+
+        var row = QueueApiController.Row.of(pickslip);
+
+        Assertions.assertEquals("req-1", row.request().id());
+        Assertions.assertEquals(new QueueApiController.Row.Requester("Ada", "Lovelace"), row.request().requester());
+        for (var hidden : List.of("patron-uuid", "P1234567", "please hurry")) {
+            Assertions.assertFalse(row.toString().contains(hidden), hidden);
+        }
+    }
+}
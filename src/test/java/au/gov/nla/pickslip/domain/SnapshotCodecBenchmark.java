@@ -0,0 +1,54 @@
+package au.gov.nla.pickslip.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+
+/*
+  Size of a saved snapshot of a large backlog, and how long it takes to write and load (at
+  startup).  Not part of the normal build - run with:
+
+    mvn test -Dbenchmark=true -Dtest=SnapshotCodecBenchmark
+*/
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SnapshotCodecBenchmark {
+
+    private static final int RECORDS = 12_000;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    void snapshot() throws IOException {
+
+        var snapshot = SnapshotCodecTests.snapshot(RECORDS);
+
+        var out = new ByteArrayOutputStream();
+        SnapshotCodec.write(snapshot, Instant.now(), out);
+        byte[] bytes = out.toByteArray();
+        Assertions.assertTrue(SnapshotCodec.read(new ByteArrayInputStream(bytes)).snapshot().diff(snapshot).isEmpty());
+
+        for (int i = 0; i < WARMUP; i++) {
+            SnapshotCodec.write(snapshot, Instant.now(), new ByteArrayOutputStream());
+            SnapshotCodec.read(new ByteArrayInputStream(bytes));
+        }
+
+        long write = 0, read = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            SnapshotCodec.write(snapshot, Instant.now(), new ByteArrayOutputStream());
+            write += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            SnapshotCodec.read(new ByteArrayInputStream(bytes));
+            read += System.nanoTime() - start;
+        }
+
+        System.out.printf("Snapshot of %d requests: %d bytes, written in %.1fms, loaded in %.1fms%n",
+                RECORDS, bytes.length, write / 1e6 / ITERATIONS, read / 1e6 / ITERATIONS);
+    }
+}
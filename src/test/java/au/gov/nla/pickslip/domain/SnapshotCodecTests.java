@@ -0,0 +1,78 @@
+package au.gov.nla.pickslip.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SnapshotCodecTests {
+
+    private static final List<String> CODES = List.of("MITCHELL-SP", "LG1-SP", "MRR-SP", "PIC-SP");
+
+    @Test
+    void roundTripsSnapshot() throws IOException {
+
+        var snapshot = snapshot(200);
+        var savedAt = Instant.parse("2026-01-02T03:04:05.678Z");
+
+        var out = new ByteArrayOutputStream();
+        SnapshotCodec.write(snapshot, savedAt, out);
+        var saved = SnapshotCodec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        Assertions.assertEquals(savedAt, saved.savedAt());
+        Assertions.assertEquals(snapshot.getVersion(), saved.snapshot().getVersion());
+        Assertions.assertEquals(snapshot.getServicePointPickslips(), saved.snapshot().getServicePointPickslips());
+        Assertions.assertTrue(saved.snapshot().diff(snapshot).isEmpty(), "Should be no changes");
+        Assertions.assertEquals(snapshot.getVisitorsForStack("MRR-SP"), saved.snapshot().getVisitorsForStack("MRR-SP"));
+    }
+
+    @Test
+    void restoreOnlyBeforeFirstBuild() throws IOException {
+
+        var out = new ByteArrayOutputStream();
+        SnapshotCodec.write(snapshot(10), Instant.now(), out);
+        var saved = SnapshotCodec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        var queues = new PickslipQueues();
+        Assertions.assertTrue(queues.restore(saved.snapshot()));
+        Assertions.assertEquals(42, queues.snapshot().getVersion());
+        Assertions.assertFalse(queues.restore(saved.snapshot()), "Should not replace a restored or built model");
+    }
+
+    static PickslipQueues.Snapshot snapshot(int size) {
+        Map<PickslipQueues.ServicePoint, List<PickslipQueues.Pickslip>> queues = new HashMap<>();
+        var start = ZonedDateTime.of(2026, 1, 1, 9, 0, 0, 123_000_000, ZoneId.of("UTC"));
+        for (int i = 0; i < size; i++) {
+            String code = CODES.get(i % CODES.size());
+            var sp = new PickslipQueues.ServicePoint("id-" + code, code, code.toLowerCase());
+            boolean inTransit = i % 7 == 0;
+            var pickslip = new PickslipQueues.Pickslip(
+                    i % 11 == 0, i % 13 == 0,
+                    new PickslipQueues.Pickslip.Request(
+                            "request-" + i,
+                            new PickslipQueues.Pickslip.Request.Requester("user-" + (i % 500), "barcode-" + (i % 500),
+                                    "First" + (i % 50), "Last" + (i % 300)),
+                            start.plusMinutes(i),
+                            i % 5 == 0 ? "Comment " + i : null,
+                            "Staff",
+                            inTransit ? "Open - In transit" : "Open - Not yet filled",
+                            null,
+                            i % 11 == 0 ? List.of("MRR-SP") : i % 3 == 0 ? null : List.of()),
+                    new PickslipQueues.Pickslip.Item("item-" + i, "Title of item " + i, "Author, A" + i % 40,
+                            "Author, A" + i % 40, null, "9900" + i, "N " + i, null, null,
+                            "Stack [" + code + "]", "", "1"),
+                    new PickslipQueues.Pickslip.Instance("instance-" + i, "Title of item " + i));
+            queues.computeIfAbsent(sp, k -> new ArrayList<>()).add(pickslip);
+        }
+        return new PickslipQueues.Snapshot(42, queues, CODES);
+    }
+}
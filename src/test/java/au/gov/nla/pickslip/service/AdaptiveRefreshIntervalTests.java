@@ -0,0 +1,33 @@
+package au.gov.nla.pickslip.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class AdaptiveRefreshIntervalTests {
+
+    private final AdaptiveRefreshInterval interval =
+            new AdaptiveRefreshInterval(Duration.ofSeconds(20), Duration.ofSeconds(300), 0);
+
+    @Test
+    void backsOffWhenQuietAndTightensOnChange() {
+
+        Assertions.assertEquals(Duration.ofSeconds(30), interval.next(0, Duration.ofSeconds(1), false));
+        Assertions.assertEquals(Duration.ofSeconds(45), interval.next(0, Duration.ofSeconds(1), false));
+        Assertions.assertEquals(Duration.ofMillis(22500), interval.next(3, Duration.ofSeconds(1), false));
+        Assertions.assertEquals(Duration.ofSeconds(20), interval.next(3, Duration.ofSeconds(1), false), "Should not go below min");
+
+        for (int i = 0; i < 20; i++) {
+            interval.next(0, Duration.ofSeconds(1), false);
+        }
+        Assertions.assertEquals(Duration.ofSeconds(300), interval.current(), "Should not go above max");
+    }
+
+    @Test
+    void slowOrFailedRunsBackOff() {
+
+        Assertions.assertEquals(Duration.ofSeconds(40), interval.next(5, Duration.ofSeconds(10), false));
+        Assertions.assertEquals(Duration.ofSeconds(60), interval.next(5, Duration.ofSeconds(1), true));
+    }
+}
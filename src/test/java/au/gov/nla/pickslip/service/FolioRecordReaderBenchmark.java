@@ -0,0 +1,152 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.FolioRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  Streaming reader vs the previous JsonNode tree / JSON pointer parse of a full page of requests.
+  Not part of the normal build - run with:
+
+    mvn test -Dbenchmark=true -Dtest=FolioRecordReaderBenchmark
+*/
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FolioRecordReaderBenchmark {
+
+    private static final int RECORDS = 4000; // folio.requests.limit
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void requests() throws IOException {
+
+        JsonNode page = requestsPage(RECORDS);
+        byte[] raw = mapper.writeValueAsBytes(page);
+
+        Assertions.assertEquals(treeParseRequests(page), FolioRecordReader.readRequests(page.traverse()));
+
+        for (int i = 0; i < WARMUP; i++) {
+            treeParseRequests(page);
+            FolioRecordReader.readRequests(page.traverse());
+            FolioRecordReader.readRequests(mapper.getFactory().createParser(raw));
+            treeParseRequests(mapper.readTree(raw));
+        }
+
+        long tree = 0, streamNode = 0, streamRaw = 0, treeRaw = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            treeParseRequests(page);
+            tree += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FolioRecordReader.readRequests(page.traverse());
+            streamNode += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            treeParseRequests(mapper.readTree(raw));
+            treeRaw += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FolioRecordReader.readRequests(mapper.getFactory().createParser(raw));
+            streamRaw += System.nanoTime() - start;
+        }
+
+        System.out.printf("%d requests, mean of %d runs (ms):%n", RECORDS, ITERATIONS);
+        System.out.printf("  tree (JsonNode, JSON pointer)   %8.2f%n", tree / 1e6 / ITERATIONS);
+        System.out.printf("  streaming over JsonNode         %8.2f%n", streamNode / 1e6 / ITERATIONS);
+        System.out.printf("  tree from bytes (readTree + at) %8.2f%n", treeRaw / 1e6 / ITERATIONS);
+        System.out.printf("  streaming from bytes            %8.2f%n", streamRaw / 1e6 / ITERATIONS);
+    }
+
+    // a page of requests shaped like /circulation/requests, including fields we don't read.
+    private JsonNode requestsPage(int n) {
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode requests = root.putArray("requests");
+        for (int i = 0; i < n; i++) {
+            ObjectNode r = requests.addObject();
+            r.put("id", "e688d594-379b-456d-845c-" + String.format("%012d", i));
+            r.put("requestLevel", "Item");
+            r.put("requestType", "Page");
+            r.put("requestDate", "2023-03-26T13:00:00.000+00:00");
+            r.put("patronComments", "");
+            r.put("requesterId", "5e73e86d-e493-5465-9bbe-a8d62025f475");
+            r.put("instanceId", "f4e192ba-a995-5f2c-8d7d-c13ec36d258f");
+            r.put("holdingsRecordId", "4f7d1f7e-7b4f-4a8a-9a6e-0a0a0a0a0a0a");
+            r.put("itemId", "dd3223ca-a641-521e-9b51-2090d34bebd6");
+            r.put("status", i % 5 == 0 ? "Open - In transit" : "Open - Not yet filled");
+            r.put("position", 1);
+            r.putObject("instance").put("title", "Land without justice : an autobiography of his youth " + i)
+                    .putArray("identifiers").addObject().put("value", "0151480013").put("identifierTypeId", "x");
+            ObjectNode item = r.putObject("item");
+            item.put("barcode", "9900015" + i);
+            item.put("callNumber", "655 MAN " + i);
+            item.put("status", "Paged");
+            item.putObject("location").put("name", "MITCHELL WAREHOUSE [Mitchell]").put("code", "MITCHELL")
+                    .put("libraryName", "National Library of Australia");
+            ObjectNode requester = r.putObject("requester");
+            requester.put("firstName", "Alex");
+            requester.put("lastName", "Barr");
+            requester.put("barcode", "21708000392647");
+            requester.put("patronGroupGroup", "SPL");
+            requester.put("patronGroupDescription", "Staff Personal Loan");
+            r.putArray("tagList").add("mrr-sp").add("parked");
+            r.putObject("fulfillmentPreference");
+            r.putObject("metadata").put("createdDate", "2023-03-26T13:00:00.000+00:00")
+                    .put("updatedDate", "2023-03-26T13:00:00.000+00:00");
+        }
+        root.put("totalRecords", n);
+        return root;
+    }
+
+    // FolioService.getFolioRequests prior to the streaming reader, for comparison.
+    private static List<FolioRequest> treeParseRequests(JsonNode n) {
+        ArrayList<FolioRequest> result = new ArrayList<>();
+        n.at("/requests").forEach(r -> {
+            var requestDateNode = r.at("/requestDate");
+            ZonedDateTime requestDate = requestDateNode.isNull()
+                    ? null
+                    : ZonedDateTime.parse(requestDateNode.asText(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            ZonedDateTime localRequestDate = requestDate.withZoneSameInstant(ZoneId.systemDefault());
+
+            ArrayList<String> tagList = new ArrayList<>();
+            r.at("/tagList").elements().forEachRemaining(s -> tagList.add(s.asText()));
+
+            result.add(new FolioRequest(
+                    r.at("/id").asText(null),
+                    localRequestDate,
+                    r.at("/patronComments").asText(null),
+                    r.at("/itemId").asText(null),
+                    r.at("/instanceId").asText(null),
+                    r.at("/requesterId").asText(null),
+                    r.at("/status").asText(null),
+                    r.at("/cancellationAdditionalInformation").asText(null),
+                    r.at("/position").asText(null),
+                    new FolioRequest.Instance(r.at("/instance/title").asText(null)),
+                    new FolioRequest.Item(
+                            r.at("/item/barcode").asText(null),
+                            r.at("/item/callNumber").asText(null),
+                            new FolioRequest.Item.Location(
+                                    r.at("/item/location/name").asText(null),
+                                    r.at("/item/location/code").asText(null))),
+                    new FolioRequest.Requester(
+                            r.at("/requester/barcode").asText(null),
+                            r.at("/requester/patronGroupGroup").asText(null)),
+                    tagList));
+        });
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.FolioPickslip;
+import au.gov.nla.pickslip.domain.FolioRequest;
+import au.gov.nla.pickslip.domain.StringPool;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class FolioRecordReaderTests {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    void readRequestsSkipsUnusedAndNullFields() throws IOException {
+
+        String json = """
+                {
+                  "totalRecords": 1,
+                  "unused": { "nested": [ { "id": "not-this-one" } ] },
+                  "requests": [
+                    {
+                      "metadata": { "updatedDate": "2023-03-26T13:00:00.000+00:00", "id": "not-this-one" },
+                      "id": "e688d594-379b-456d-845c-e68c14e613d8",
+                      "requestDate": "2023-03-26T13:00:00.000+00:00",
+                      "position": 3,
+                      "instance": null,
+                      "item": { "holdingsRecordId": "x", "location": { "code": "MITCHELL", "libraryName": "y" } },
+                      "tagList": [ "parked", "MRR-SP" ]
+                    },
+                    null
+                  ],
+                  "more": "ignored"
+                }""";
+
+        List<FolioRequest> requests = FolioRecordReader.readRequests(jsonFactory.createParser(json));
+
+        Assertions.assertEquals(1, requests.size());
+        FolioRequest r = requests.get(0);
+        Assertions.assertEquals("e688d594-379b-456d-845c-e68c14e613d8", r.id());
+        Assertions.assertEquals("3", r.position());
+        Assertions.assertNull(r.instance().title());
+        Assertions.assertNull(r.item().barcode());
+        Assertions.assertEquals("MITCHELL", r.item().location().code());
+        Assertions.assertNull(r.requester().barcode());
+        Assertions.assertEquals(List.of("parked", "MRR-SP"), r.tagList());
+    }
+
+    @Test
+    void readRequestsSharesPooledValues() throws IOException {
+
+        String json = """
+                { "requests": [
+                    { "id": "a", "status": "Open - Not yet filled", "tagList": [ "parked" ] },
+                    { "id": "b", "status": "Open - Not yet filled", "tagList": [ "parked" ] }
+                ] }""";
+
+        StringPool pool = new StringPool();
+        List<FolioRequest> requests = FolioRecordReader.readRequests(jsonFactory.createParser(json), pool);
+
+        Assertions.assertSame(requests.get(0).status(), requests.get(1).status());
+        Assertions.assertSame(requests.get(0).tagList().get(0), requests.get(1).tagList().get(0));
+
+        StringPool.Stats stats = pool.rotate();
+        Assertions.assertEquals(2, stats.distinct());
+        Assertions.assertEquals(2, stats.deduplicated());
+    }
+
+    @Test
+    void readPickslipsFromEmptyDocument() throws IOException {
+
+        List<FolioPickslip> pickslips = FolioRecordReader.readPickslips(jsonFactory.createParser("{}"));
+
+        Assertions.assertTrue(pickslips.isEmpty());
+    }
+}
@@ -6,6 +6,8 @@ import au.gov.nla.pickslip.domain.FolioRequest;
 import au.gov.nla.pickslip.domain.FolioServicePoint;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,6 +18,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.time.ZoneId;
@@ -23,6 +26,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 @ExtendWith(MockitoExtension.class)
 public class FolioServiceTests {
@@ -125,6 +129,48 @@ public class FolioServiceTests {
     }
 
 
+    @Test
+    void getPickslipsForServicePoints() throws IOException {
+
+        // run fan-out on the calling thread
+        folioService.folioAsyncExecutor = Runnable::run;
+
+        Mockito.doReturn(loadJson("pickslipsForServicePointMitchell.json"))
+                .when(folioService).folioApiGetPickslipsForServicePoint(
+                        ArgumentMatchers.eq("f2b6aa63-008f-4c02-a6ac-e761a6b51ee1"),
+                        ArgumentMatchers.anyInt());
+        Mockito.doReturn(null)
+                .when(folioService).folioApiGetPickslipsForServicePoint(
+                        ArgumentMatchers.eq("325aea8b-f5f2-4160-88ca-63d803856a70"),
+                        ArgumentMatchers.anyInt());
+
+        var mitchell = new FolioServicePoint("f2b6aa63-008f-4c02-a6ac-e761a6b51ee1", "MITCHELL-SP", "Mitchell", "Mitchell Warehouse");
+        var mrr = new FolioServicePoint("325aea8b-f5f2-4160-88ca-63d803856a70", "MRR-SP", "Main Reading Room", "Main Reading Room");
+
+        Map<FolioServicePoint, List<FolioPickslip>> result = folioService.getPickslipsForServicePoints(List.of(mitchell, mrr));
+
+        Assertions.assertEquals(2, result.size());
+        Assertions.assertEquals(2, result.get(mitchell).size());
+        Assertions.assertTrue(result.containsKey(mrr));
+        Assertions.assertNull(result.get(mrr));
+    }
+
+    @Test
+    void getPickslipsForServicePointsRethrowsIOException() throws IOException {
+
+        folioService.folioAsyncExecutor = Runnable::run;
+
+        Mockito.doThrow(new IOException("FOLIO unavailable"))
+                .when(folioService).folioApiGetPickslipsForServicePoint(
+                        ArgumentMatchers.anyString(),
+                        ArgumentMatchers.anyInt());
+
+        var mitchell = new FolioServicePoint("f2b6aa63-008f-4c02-a6ac-e761a6b51ee1", "MITCHELL-SP", "Mitchell", "Mitchell Warehouse");
+
+        Assertions.assertThrows(IOException.class, () -> folioService.getPickslipsForServicePoints(List.of(mitchell)));
+    }
+
+
     @Test
     void getRequests() throws IOException {
 
@@ -160,6 +206,74 @@ public class FolioServiceTests {
         Assertions.assertEquals(expected, requests);
     }
 
+    @Test
+    void getRequestsFetchesRemainingPages() throws IOException {
+
+        folioService.folioAsyncExecutor = Runnable::run;
+
+        // first page holds one of three records
+        Mockito.doReturn(requestsPage("page-0", 3))
+                .when(folioService).folioApiGetRequests();
+        Mockito.doReturn(requestsPage("page-1", 3))
+                .when(folioService).folioApiGetRequests(1, 1);
+        Mockito.doReturn(requestsPage("page-2", 3))
+                .when(folioService).folioApiGetRequests(2, 1);
+
+        List<FolioRequest> requests = folioService.getFolioRequests();
+
+        Assertions.assertEquals(List.of("page-0", "page-1", "page-2"),
+                requests.stream().map(FolioRequest::id).toList());
+    }
+
+    @Test
+    void syncRequestsAppliesChangesSinceLastSync() throws IOException {
+
+        folioService.folioAsyncExecutor = Runnable::run;
+        ReflectionTestUtils.setField(folioService, "folioRequestsIncremental", true);
+        ReflectionTestUtils.setField(folioService, "folioRequestsFullResyncMinutes", 30);
+
+        Mockito.doReturn(loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        // first sync is full
+        Assertions.assertEquals(1, folioService.syncFolioRequestsAsync().join().size());
+
+        // then only changes: a new request, and the original filled
+        ObjectNode changes = (ObjectNode) requestsPage("new-request", 2);
+        ArrayNode changed = (ArrayNode) changes.get("requests");
+        ObjectNode filled = ((ObjectNode) loadJson("folioRequests.json").at("/requests/0"))
+                .put("status", "Closed - Filled");
+        changed.add(filled);
+        Mockito.doReturn(changes)
+                .when(folioService).folioApiGetRequestsUpdatedSince(ArgumentMatchers.anyString(),
+                        ArgumentMatchers.eq(0), ArgumentMatchers.anyInt());
+
+        List<FolioRequest> requests = folioService.syncFolioRequestsAsync().join();
+
+        Assertions.assertEquals(List.of("new-request"), requests.stream().map(FolioRequest::id).toList());
+        Mockito.verify(folioService, Mockito.times(1)).folioApiGetRequests();
+    }
+
+    @Test
+    void getRequestsReusesRecordsForUnchangedPayload() throws IOException {
+
+        Mockito.doReturn(loadJson("folioRequests.json"), loadJson("folioRequests.json"), requestsPage("changed", 1))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioRequest> first = folioService.getFolioRequests();
+
+        Assertions.assertSame(first, folioService.getFolioRequests(), "Should not be parsed again");
+        Assertions.assertEquals(1, folioService.getUnchangedPayloadCount());
+        Assertions.assertNotSame(first, folioService.getFolioRequests());
+    }
+
+    private JsonNode requestsPage(String id, int totalRecords) throws IOException {
+        ObjectNode page = (ObjectNode) loadJson("folioRequests.json");
+        ((ObjectNode) page.at("/requests/0")).put("id", id);
+        page.put("totalRecords", totalRecords);
+        return page;
+    }
+
 
 
 }
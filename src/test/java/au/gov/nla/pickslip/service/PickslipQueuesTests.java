@@ -12,9 +12,14 @@ import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 @ExtendWith(MockitoExtension.class)
 public class PickslipQueuesTests {
@@ -66,6 +71,258 @@ public class PickslipQueuesTests {
         Assertions.assertNotNull(pickslipQueues.getPickslipByRequestId("e688d594-379b-456d-845c-e68c14e613d8"), "Should exist");
         Assertions.assertEquals(1, pickslipQueues.getVisitorsForStack("MRR-SP").size(), "Should be visiting MRR stack");
         Assertions.assertEquals(0, pickslipQueues.getVisitorsForStack("MITCHELL-SP").size(), "Should be no visitors");
+
+        var summary = pickslipQueues.snapshot().getSummaryForStack("MITCHELL-SP");
+        Assertions.assertEquals(1, summary.total());
+        Assertions.assertEquals(Map.of("Open - Not yet filled", 1), summary.byStatus());
+        Assertions.assertEquals(1, summary.parked());
+        Assertions.assertEquals(1, summary.visiting());
+        Assertions.assertEquals(mrrPickslips.get(0).request().requestDate(), summary.oldestNotYetFilled());
+        Assertions.assertEquals(1, pickslipQueues.snapshot().getSummaryForStack("MRR-SP").visitors());
+
+        var found = pickslipQueues.snapshot().search("9900015", 10);
+        Assertions.assertEquals(1, found.size(), "Should find by barcode prefix");
+        Assertions.assertEquals("MITCHELL-SP", found.get(0).stackCode());
+        Assertions.assertSame(mrrPickslips.get(0), found.get(0).pickslip());
+        Assertions.assertEquals(0, pickslipQueues.snapshot().search("9900015 nomatch", 10).size());
+
+        var scanned = pickslipQueues.snapshot().scan(" 990001588920\n", false);
+        Assertions.assertSame(mrrPickslips.get(0), scanned.single().pickslip(), "Should find by item barcode");
+        Assertions.assertEquals(List.of(), scanned.patron());
+        Assertions.assertEquals(1, pickslipQueues.snapshot().scan("21708000392647", true).patron().size(),
+                "Should find by patron barcode");
+        Assertions.assertEquals(List.of(), pickslipQueues.snapshot().scan("21708000392647", false).patron(),
+                "Should find by patron barcode only when signed in");
+        Assertions.assertNull(pickslipQueues.snapshot().scan("nomatch", true).single());
+    }
+
+    @Test
+    void updateWithUnchangedSourceDataKeepsModel() throws IOException {
+
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+        Mockito.doReturn(TestUtils.loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+        List<FolioLocation> locations = folioService.getFolioLocations();
+        List<FolioRequest> requests = folioService.getFolioRequests();
+        var pickslipsForMitchell = Map.of(servicePoints.get(0), List.<FolioPickslip>of());
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(Arrays.asList(new StackLocations.Location("MITCHELL-SP", "Mitchell"),
+                new StackLocations.Location("MRR-SP", "Main Reading Room")));
+
+        PickslipQueues pickslipQueues = new PickslipQueues();
+        pickslipQueues.update(stackLocations, requests, servicePoints, locations, pickslipsForMitchell);
+        var before = pickslipQueues.getPickslipsForStack("MITCHELL-SP");
+
+        pickslipQueues.update(stackLocations, requests, servicePoints, locations, Map.copyOf(pickslipsForMitchell));
+
+        Assertions.assertEquals(1, pickslipQueues.getUnchangedUpdates());
+        Assertions.assertEquals(1, pickslipQueues.snapshot().getVersion());
+        Assertions.assertSame(before, pickslipQueues.getPickslipsForStack("MITCHELL-SP"), "Should not be rebuilt");
+    }
+
+    @Test
+    void updateReturnsChangesSincePreviousVersion() throws IOException {
+
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+        Mockito.doReturn(TestUtils.loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+        List<FolioLocation> locations = folioService.getFolioLocations();
+        FolioRequest r = folioService.getFolioRequests().get(0);
+        FolioRequest inTransit = new FolioRequest(r.id(), r.requestDate(), r.patronComments(), r.itemId(),
+                r.instanceId(), r.requesterId(), "Open - In transit", r.cancellationAdditionalInformation(),
+                r.position(), r.instance(), r.item(), r.requester(), r.tagList());
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(Arrays.asList(new StackLocations.Location("MITCHELL-SP", "Mitchell"),
+                new StackLocations.Location("MRR-SP", "Main Reading Room")));
+
+        PickslipQueues pickslipQueues = new PickslipQueues();
+
+        QueueDelta added = pickslipQueues.update(stackLocations, List.of(r), servicePoints, locations, Map.of());
+        Assertions.assertEquals(List.of(QueueDelta.ChangeType.ADDED),
+                added.changes().stream().map(QueueDelta.Change::type).toList());
+
+        QueueDelta changed = pickslipQueues.update(stackLocations, List.of(inTransit), servicePoints, locations, Map.of());
+        Assertions.assertEquals(1, changed.fromVersion());
+        Assertions.assertEquals(2, changed.toVersion());
+        Assertions.assertEquals(List.of(QueueDelta.ChangeType.STATUS_CHANGED),
+                changed.changes().stream().map(QueueDelta.Change::type).toList());
+        Assertions.assertEquals(Set.of("MITCHELL-SP"), changed.affectedStacks());
+
+        QueueDelta removed = pickslipQueues.update(stackLocations, List.of(), servicePoints, locations, Map.of());
+        Assertions.assertEquals(List.of(QueueDelta.ChangeType.REMOVED),
+                removed.changes().stream().map(QueueDelta.Change::type).toList());
+        Assertions.assertEquals(Set.of(r.id()), removed.byStack().get("MITCHELL-SP").removed());
+        Assertions.assertEquals(Set.of("MITCHELL-SP"), changed.queueChangesByStack().keySet());
+
+        // rebuilt (new source lists) with nothing changed: the version must still mean the same queues.
+        QueueDelta none = pickslipQueues.update(stackLocations, new ArrayList<>(), servicePoints, locations, new HashMap<>());
+        Assertions.assertTrue(none.isEmpty());
+        Assertions.assertEquals(3, none.toVersion());
+        Assertions.assertEquals(3, pickslipQueues.snapshot().getVersion());
+
+        PickslipQueues empty = new PickslipQueues();
+        empty.update(stackLocations, List.of(), servicePoints, locations, Map.of());
+        Assertions.assertEquals(1, empty.snapshot().getVersion(), "First build should be kept, even without requests");
+    }
+
+    @Test
+    void changesToTaggedRequestsAreChangesToVisitors() throws IOException {
+
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+        Mockito.doReturn(TestUtils.loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+        List<FolioLocation> locations = folioService.getFolioLocations();
+        FolioRequest r = folioService.getFolioRequests().get(0);
+        FolioRequest tagged = new FolioRequest(r.id(), r.requestDate(), r.patronComments(), r.itemId(),
+                r.instanceId(), r.requesterId(), r.status(), r.cancellationAdditionalInformation(),
+                r.position(), r.instance(), r.item(), r.requester(), List.of("MRR-SP"));
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(Arrays.asList(new StackLocations.Location("MITCHELL-SP", "Mitchell"),
+                new StackLocations.Location("MRR-SP", "Main Reading Room")));
+
+        PickslipQueues pickslipQueues = new PickslipQueues();
+
+        QueueDelta added = pickslipQueues.update(stackLocations, List.of(tagged), servicePoints, locations, Map.of());
+        Assertions.assertEquals(Set.of(r.id()), added.byStack().get("MITCHELL-SP").added());
+        Assertions.assertEquals(Set.of(r.id()), added.byStack().get("MRR-SP").changed());
+        Assertions.assertEquals(Map.of("MRR-SP", Set.of(r.id())), added.visitorChangesByStack());
+        Assertions.assertEquals(Set.of("MITCHELL-SP"), added.queueChangesByStack().keySet());
+
+        // filled - gone from the queue, and from the visitors of the stack it was tagged with.
+        QueueDelta filled = pickslipQueues.update(stackLocations, List.of(), servicePoints, locations, Map.of());
+        Assertions.assertEquals(Set.of(r.id()), filled.byStack().get("MITCHELL-SP").removed());
+        Assertions.assertEquals(Set.of(r.id()), filled.byStack().get("MRR-SP").changed());
+    }
+
+    @Test
+    void requestsAtUnknownLocationsAreReported() throws IOException {
+
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+        Mockito.doReturn(TestUtils.loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+        List<FolioLocation> locations = folioService.getFolioLocations();
+        FolioRequest r = folioService.getFolioRequests().get(0);
+        FolioRequest atNewLocation = new FolioRequest("new-location", r.requestDate(), r.patronComments(), r.itemId(),
+                r.instanceId(), r.requesterId(), r.status(), r.cancellationAdditionalInformation(), r.position(),
+                r.instance(), new FolioRequest.Item(null, null, new FolioRequest.Item.Location("New", "NEW")),
+                r.requester(), r.tagList());
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell")));
+
+        PickslipQueues pickslipQueues = new PickslipQueues();
+        pickslipQueues.update(stackLocations, List.of(r, atNewLocation), servicePoints, locations, Map.of());
+
+        Assertions.assertEquals(Set.of("NEW"), pickslipQueues.getUnknownLocationCodes());
+        Assertions.assertNotNull(pickslipQueues.getPickslipByRequestId(r.id()), "Should still build the rest");
+
+        stackLocations.setStacks(List.of(new StackLocations.Location("NEW-SP", "New")));
+        Assertions.assertThrows(PickslipQueues.ReferenceDataException.class,
+                () -> new PickslipQueues().update(stackLocations, List.of(r), servicePoints, locations, Map.of()));
+    }
+
+    @Test
+    void pickslipsAreMatchedToRequestsById() throws IOException {
+
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+        Mockito.doReturn(TestUtils.loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+        List<FolioLocation> locations = folioService.getFolioLocations();
+        FolioRequest r = folioService.getFolioRequests().get(0);
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell")));
+
+        // a pickslip for a request no longer open, and two for the same request (first wins).
+        var pickslips = List.of(pickslip("no-such-request", "Gone"), pickslip(r.id(), "First"),
+                pickslip(r.id(), "Second"));
+
+        PickslipQueues pickslipQueues = new PickslipQueues();
+        pickslipQueues.update(stackLocations, List.of(r), servicePoints, locations,
+                Map.of(servicePoints.get(0), pickslips));
+
+        Assertions.assertNull(pickslipQueues.getPickslipByRequestId("no-such-request"),
+                "Should ignore pickslips without a request");
+        Assertions.assertEquals(1, pickslipQueues.getPickslipsForStack("MITCHELL-SP").size());
+        Assertions.assertEquals("First", pickslipQueues.getPickslipByRequestId(r.id()).item().title());
+    }
+
+    @Test
+    void queuesBuiltInParallelAreInSequentialSortOrder() throws IOException {
+
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+        Mockito.doReturn(TestUtils.loadJson("folioRequests.json"))
+                .when(folioService).folioApiGetRequests();
+
+        List<FolioServicePoint> servicePoints = folioService.getFolioServicePoints();
+        List<FolioLocation> locations = new ArrayList<>(folioService.getFolioLocations());
+        var mrr = servicePoints.stream().filter(sp -> sp.code().equals("MRR-SP")).findFirst().orElseThrow();
+        locations.add(new FolioLocation("mrr-location", "MRR", "Main Reading Room", mrr.id()));
+        FolioRequest r = folioService.getFolioRequests().get(0);
+
+        // many requests across two stacks, in no particular order, some with the same date.
+        var random = new Random(42);
+        var statuses = List.of("Open - Not yet filled", "Open - In transit", "Open - Awaiting pickup");
+        List<FolioRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String code = random.nextBoolean() ? "MITCHELL" : "MRR";
+            requests.add(new FolioRequest("request-" + i, r.requestDate().plusMinutes(random.nextInt(100)),
+                    null, r.itemId(), r.instanceId(), r.requesterId(), statuses.get(random.nextInt(statuses.size())),
+                    null, r.position(), r.instance(), new FolioRequest.Item(null, null,
+                    new FolioRequest.Item.Location(code, code)), r.requester(), List.of()));
+        }
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell"),
+                new StackLocations.Location("MRR-SP", "Main Reading Room")));
+
+        PickslipQueues pickslipQueues = new PickslipQueues();
+        pickslipQueues.update(stackLocations, requests, servicePoints, locations, Map.of());
+
+        // status, then request date - both descending; ties keep their order from FOLIO.
+        var order = Comparator.comparing(FolioRequest::status).thenComparing(FolioRequest::requestDate).reversed();
+        for (var stack : List.of("MITCHELL-SP", "MRR-SP")) {
+            String code = stack.equals("MRR-SP") ? "MRR" : "MITCHELL";
+            var expected = requests.stream().filter(q -> q.item().location().code().equals(code))
+                    .sorted(order).map(FolioRequest::id).toList();
+            var actual = pickslipQueues.getPickslipsForStack(stack).stream().map(p -> p.request().id()).toList();
+            Assertions.assertEquals(expected, actual, stack);
+        }
     }
 
+    private static FolioPickslip pickslip(String requestId, String title) {
+        return new FolioPickslip(requestId, new FolioPickslip.Item(title, null, null, null, null, null, null,
+                null, null, null, null), new FolioPickslip.Requester("Ada", "Lovelace", "P1"));
+    }
 }
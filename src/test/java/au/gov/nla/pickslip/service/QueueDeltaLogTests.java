@@ -0,0 +1,49 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.QueueDelta;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class QueueDeltaLogTests {
+
+    @Test
+    void changedSinceVersion() {
+
+        QueueDeltaLog log = new QueueDeltaLog();
+        log.capacity = 2;
+        log.init();
+
+        Assertions.assertEquals(Map.of(), log.changedSince(5, 5).queues());
+        Assertions.assertNull(log.changedSince(3, 5), "Nothing held - should need everything");
+
+        // R2 was visiting MITCHELL-SP.
+        log.onQueueChange(new QueueDelta(4, 5, List.of(new QueueDelta.Change(
+                QueueDelta.ChangeType.ADDED, "R1", null, "MITCHELL-SP", null, null))));
+        log.onQueueChange(new QueueDelta(5, 6, List.of(new QueueDelta.Change(
+                QueueDelta.ChangeType.REMOVED, "R2", "lg1-sp", null, pickslip("R2", "MITCHELL-SP"), null))));
+
+        var changes = log.changedSince(4, 6);
+        Assertions.assertEquals(Map.of("MITCHELL-SP", Set.of("r1"), "LG1-SP", Set.of("r2")), changes.queues());
+        Assertions.assertEquals(Map.of("MITCHELL-SP", Set.of("r2")), changes.visitors());
+        Assertions.assertEquals(Map.of("LG1-SP", Set.of("r2")), log.changedSince(5, 6).queues());
+        Assertions.assertEquals(Map.of("MITCHELL-SP", Set.of("r1")), log.changedSince(4, 5).queues());
+        Assertions.assertNull(log.changedSince(3, 6), "Older than the changes held");
+        Assertions.assertNull(log.changedSince(7, 6), "Newer than the model (before a restart)");
+        Assertions.assertNull(log.changedSince(5, 7), "Version 7's changes haven't arrived yet");
+
+        log.onQueueChange(new QueueDelta(6, 7, List.of()));
+        Assertions.assertNull(log.changedSince(4, 7), "Oldest change should be dropped");
+        Assertions.assertEquals(Map.of(), log.changedSince(6, 7).queues());
+    }
+
+    private static PickslipQueues.Pickslip pickslip(String id, String tag) {
+        return new PickslipQueues.Pickslip(true, false,
+                new PickslipQueues.Pickslip.Request(id, null, null, null, null, "Open - Not yet filled", null, List.of(tag)),
+                null, null);
+    }
+}
@@ -0,0 +1,61 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.QueueDelta;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QueueMetricsServiceTests {
+
+    @Test
+    void recordsTimeToRetrievalPercentiles() {
+
+        QueueMetricsService service = new QueueMetricsService();
+        service.stackLocations = new StackLocations();
+        service.stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell")));
+        service.retrievalSamples = 3;
+        service.depthSamples = 10;
+        service.init();
+
+        ZonedDateTime now = ZonedDateTime.now();
+        List<QueueDelta.Change> changes = new ArrayList<>();
+        for (int minutes : new int[] {100, 10, 20, 30}) {
+            changes.add(new QueueDelta.Change(QueueDelta.ChangeType.STATUS_CHANGED, "r" + minutes,
+                    "MITCHELL-SP", "MITCHELL-SP",
+                    pickslip(now.minusMinutes(minutes), "Open - Not yet filled"),
+                    pickslip(now.minusMinutes(minutes), "Open - In transit")));
+        }
+        changes.add(new QueueDelta.Change(QueueDelta.ChangeType.STATUS_CHANGED, "other",
+                "MITCHELL-SP", "MITCHELL-SP",
+                pickslip(now.minusMinutes(500), "Open - In transit"),
+                pickslip(now.minusMinutes(500), "Closed - Filled")));
+        service.recordRetrievals(new QueueDelta(1, 2, changes), now);
+
+        // oldest (100 minutes) dropped - only the most recent 3 are kept.
+        var times = service.getRetrievalTimes();
+        Assertions.assertEquals(1, times.size());
+        Assertions.assertEquals(3, times.get(0).count());
+        Assertions.assertEquals(20 * 60, times.get(0).p50Seconds());
+        Assertions.assertEquals(30 * 60, times.get(0).p90Seconds());
+        Assertions.assertEquals(30 * 60, times.get(0).maxSeconds());
+
+        for (int i = 0; i < 12; i++) {
+            service.sample(new PickslipQueues().snapshot(), now.toLocalDateTime().plusMinutes(i));
+        }
+        var history = service.getDepthHistory();
+        Assertions.assertEquals(10, history.size(), "Should keep most recent samples only");
+        Assertions.assertEquals(now.toLocalDateTime().plusMinutes(2), history.get(0).time());
+        Assertions.assertEquals(0, history.get(9).stacks().get("MITCHELL-SP").total());
+    }
+
+    private static PickslipQueues.Pickslip pickslip(ZonedDateTime requested, String status) {
+        return new PickslipQueues.Pickslip(false, false,
+                new PickslipQueues.Pickslip.Request("r", null, requested, null, null, status, null, List.of()),
+                null, null);
+    }
+}
@@ -0,0 +1,68 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.TestUtils;
+import au.gov.nla.pickslip.service.async.FolioAsyncService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+
+@ExtendWith(MockitoExtension.class)
+public class ReferenceDataServiceTests {
+
+    @Spy FolioService folioService;
+
+    @Mock FolioAsyncService folioAsyncService;
+
+    ReferenceDataService referenceDataService;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Mockito.doReturn(TestUtils.loadJson("folioServicePoints.json"))
+                .when(folioService).folioApiGetServicePoints();
+        Mockito.doReturn(TestUtils.loadJson("folioLocations.json"))
+                .when(folioService).folioApiGetFolioLocations();
+
+        referenceDataService = new ReferenceDataService();
+        referenceDataService.folioService = folioService;
+        referenceDataService.folioAsyncService = folioAsyncService;
+    }
+
+    @Test
+    void cachesUntilInvalidated() throws IOException {
+
+        var first = referenceDataService.get();
+        var second = referenceDataService.get();
+
+        Assertions.assertSame(first.locations(), second.locations(), "Should be served from cache");
+        Assertions.assertEquals(4, first.locations().size());
+        Assertions.assertEquals(2, first.servicePoints().size());
+        Mockito.verify(folioService, Mockito.times(1)).folioApiGetFolioLocations();
+        Mockito.verify(folioAsyncService, Mockito.times(1)).resolveTypes();
+
+        referenceDataService.invalidate();
+        var third = referenceDataService.get();
+
+        Assertions.assertNotSame(first.locations(), third.locations(), "Should be reloaded");
+        Mockito.verify(folioService, Mockito.times(2)).folioApiGetFolioLocations();
+        Mockito.verify(folioAsyncService, Mockito.times(2)).resolveTypes();
+    }
+
+    @Test
+    void failedRefreshKeepsPreviousData() throws IOException {
+
+        var first = referenceDataService.get();
+
+        Mockito.doThrow(new IOException("FOLIO unavailable"))
+                .when(folioService).folioApiGetFolioLocations();
+        referenceDataService.refresh();
+
+        Assertions.assertSame(first, referenceDataService.get());
+    }
+}
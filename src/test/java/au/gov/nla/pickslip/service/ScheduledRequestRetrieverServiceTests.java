@@ -0,0 +1,95 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.FolioLocation;
+import au.gov.nla.pickslip.domain.FolioPickslip;
+import au.gov.nla.pickslip.domain.FolioRequest;
+import au.gov.nla.pickslip.domain.FolioServicePoint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ScheduledRequestRetrieverServiceTests {
+
+    @Test
+    void retrievesOnlyConfiguredStacksWhichAreDue() {
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell"),
+                new StackLocations.Location("LG1-SP", "LG1 General Collections", 30)));
+
+        ScheduledRequestRetrieverService service = new ScheduledRequestRetrieverService();
+        service.stackLocations = stackLocations;
+
+        var mitchell = new FolioServicePoint("1", "MITCHELL-SP", "Mitchell", "Mitchell Warehouse");
+        var lg1 = new FolioServicePoint("2", "LG1-SP", "LG1", "LG1");
+        var mrr = new FolioServicePoint("3", "MRR-SP", "Main Reading Room", "Main Reading Room");
+        var servicePoints = List.of(mitchell, lg1, mrr);
+
+        Instant now = Instant.now();
+
+        // never retrieved: everything configured is due on a main run, only LG1 between main runs
+        Assertions.assertEquals(List.of(mitchell, lg1), service.stackServicePointsDue(servicePoints, now, true));
+        Assertions.assertEquals(List.of(lg1), service.stackServicePointsDue(servicePoints, now, false));
+    }
+
+    @Test
+    void retrievesStacksWithNewRequestsOnce() {
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(List.of(new StackLocations.Location("MITCHELL-SP", "Mitchell"),
+                new StackLocations.Location("LG1-SP", "LG1 General Collections", 900)));
+
+        ScheduledRequestRetrieverService service = new ScheduledRequestRetrieverService();
+        service.stackLocations = stackLocations;
+
+        var mitchell = new FolioServicePoint("1", "MITCHELL-SP", "Mitchell", "Mitchell Warehouse");
+        var lg1 = new FolioServicePoint("2", "LG1-SP", "LG1", "LG1");
+        var servicePoints = List.of(mitchell, lg1);
+        var locations = List.of(new FolioLocation("l1", "MITCH", "Mitchell", "1"),
+                new FolioLocation("l2", "LG1", "LG1", "2"));
+        Map<FolioServicePoint, List<FolioPickslip>> pickslips =
+                Map.of(lg1, List.of(new FolioPickslip("old", null, null)));
+
+        var requests = List.of(request("old", "LG1", "Open - Not yet filled"),
+                request("new", "LG1", "Open - Not yet filled"),
+                request("moving", "LG1", "Open - In transit"), // never has a pickslip
+                request("mitchell", "MITCH", "Open - Not yet filled"));
+
+        // Mitchell was retrieved this run; LG1 wasn't due, but has a new request.
+        Assertions.assertEquals(List.of(lg1),
+                service.servicePointsMissingPickslips(requests, locations, servicePoints, pickslips, List.of(mitchell)));
+        Assertions.assertEquals(List.of(),
+                service.servicePointsMissingPickslips(requests, locations, servicePoints, pickslips, List.of(mitchell)),
+                "Should retrieve early once per request");
+    }
+
+    @Test
+    void waitsOnCallsStillRunningRatherThanStartingAnother() {
+
+        ScheduledRequestRetrieverService service = new ScheduledRequestRetrieverService();
+
+        CompletableFuture<String> hanging = new CompletableFuture<>();
+        var first = service.inFlight("pickslips:1", () -> hanging).orTimeout(1, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(first.handle((r, t) -> t).join() != null, "Should miss its deadline");
+        Assertions.assertFalse(hanging.isDone(), "Deadline shouldn't complete the call itself");
+
+        var second = service.inFlight("pickslips:1", () -> CompletableFuture.completedFuture("new"));
+        hanging.complete("late");
+        Assertions.assertEquals("late", second.join());
+
+        var third = service.inFlight("pickslips:1", () -> CompletableFuture.completedFuture("new"));
+        Assertions.assertEquals("new", third.join(), "Should start a new call once the last has finished");
+    }
+
+    private static FolioRequest request(String id, String locationCode, String status) {
+        return new FolioRequest(id, null, null, "item-" + id, null, null, status, null, null, null,
+                new FolioRequest.Item(null, null, new FolioRequest.Item.Location(locationCode, locationCode)),
+                null, List.of());
+    }
+}
@@ -0,0 +1,42 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+
+public class SnapshotStoreTests {
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void savesOwnerOnly(@TempDir Path dir) throws IOException {
+
+        SnapshotStore store = new SnapshotStore();
+        store.path = dir.resolve("queues/snapshot.bin").toString();
+        // left by a failed save, readable by anyone
+        Files.createDirectories(dir.resolve("queues"));
+        Files.createFile(dir.resolve("queues/snapshot.bin.tmp"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-r--r--")));
+
+        StackLocations stackLocations = new StackLocations();
+        stackLocations.setStacks(List.of());
+        PickslipQueues queues = new PickslipQueues();
+        queues.update(stackLocations, List.of(), List.of(), List.of(), Map.of());
+        store.save(queues.snapshot());
+
+        Assertions.assertEquals("rw-------",
+                PosixFilePermissions.toString(Files.getPosixFilePermissions(Path.of(store.path))));
+        Assertions.assertFalse(Files.exists(dir.resolve("queues/snapshot.bin.tmp")));
+        Assertions.assertEquals(1, store.load().snapshot().getVersion());
+    }
+}
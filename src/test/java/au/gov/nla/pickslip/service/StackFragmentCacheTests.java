@@ -0,0 +1,51 @@
+package au.gov.nla.pickslip.service;
+
+import au.gov.nla.pickslip.StackLocations;
+import au.gov.nla.pickslip.domain.PickslipQueues;
+import au.gov.nla.pickslip.domain.QueueDelta;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.util.List;
+
+public class StackFragmentCacheTests {
+
+    @Test
+    void rendersOncePerVersion() {
+
+        StackFragmentCache cache = new StackFragmentCache();
+        cache.templateEngine = new SpringTemplateEngine(); // resolves the template name as the template
+        cache.pageSize = 100;
+        var stack = new StackLocations.Location("MITCHELL-SP", "Mitchell");
+        var queues = new PickslipQueues().snapshot();
+        var request = new MockHttpServletRequest("GET", "/home");
+        var response = new MockHttpServletResponse();
+        String template = "<p>[[${stack.label}]] [[${stacks.size()}]]</p>";
+
+        Assertions.assertEquals("<p>Mitchell 1</p>", cache.get(template, stack, null, queues, request, response));
+        Assertions.assertEquals("<p>Mitchell 1</p>", cache.get(template, stack, null, queues, request, response));
+        cache.get(template, stack, new String[] {"MITCHELL-SP"}, queues, request, response);
+        Assertions.assertEquals(new StackFragmentCache.Stats(1, 2, 2), cache.getStats());
+        Assertions.assertEquals("", cache.get(template, null, null, queues, request, response));
+
+        // a newer snapshot drops the rows rendered for older ones, and they're not cached again.
+        cache.onQueueChange(new QueueDelta(queues.getVersion(), queues.getVersion() + 1, List.of()));
+        Assertions.assertEquals(0, cache.getStats().entries());
+        cache.get(template, stack, null, queues, request, response);
+        Assertions.assertEquals(new StackFragmentCache.Stats(1, 3, 0), cache.getStats());
+    }
+
+    @Test
+    void windowsVisitorsThenQueue() {
+
+        // 3 visitors and 8 in the queue, 4 to a page.
+        Assertions.assertEquals(new StackFragmentCache.Window(1, 3, 0, 3, 0, 1), StackFragmentCache.Window.of(3, 8, 1, 4));
+        Assertions.assertEquals(new StackFragmentCache.Window(2, 3, 3, 3, 1, 5), StackFragmentCache.Window.of(3, 8, 2, 4));
+        Assertions.assertEquals(new StackFragmentCache.Window(3, 3, 3, 3, 5, 8), StackFragmentCache.Window.of(3, 8, 9, 4),
+                "Past the last page should be the last page");
+        Assertions.assertEquals(new StackFragmentCache.Window(1, 1, 0, 0, 0, 0), StackFragmentCache.Window.of(0, 0, 0, 4));
+    }
+}